@@ -1,23 +1,35 @@
 package enigma;
+
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may hold supplementary characters (those that
+ *  take two chars in a String); the char-based methods apply only to
+ *  characters in the Basic Multilingual Plane.
  *  @author Nhu Vu
  */
 class Alphabet {
 
-    /** A new alphabet containing CHARS. The K-th character has index
-     *  K (numbering from 0). No character may be duplicated. */
+    /** A new alphabet containing the code points of CHARS. The K-th
+     *  code point has index K (numbering from 0). No character may be
+     *  duplicated. */
     Alphabet(String chars) {
-        _size = chars.length();
         _chars = chars;
+        _codePoints = chars.codePoints().toArray();
+        _size = _codePoints.length;
 
         if (_size == 0) {
             throw error("Alphabet cannot be empty!");
         }
-        if (this.contains(' ')) {
-            throw error("Cannot contain whitespace!");
+        buildIndex();
+        for (int cp : _codePoints) {
+            if (Character.isWhitespace(cp)) {
+                throw error("Cannot contain whitespace!");
+            }
+            _bmp &= Character.isBmpCodePoint(cp);
         }
         if (this.duplicates()) {
             throw error("Cannot contain duplicate chars!");
@@ -29,51 +41,180 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Fill in the reverse index from code points to indices.  Small or
+     *  densely packed alphabets get a flat table indexed by code point;
+     *  sparse ones with high code points get an open-addressed hash
+     *  table of twice the alphabet size or more.  The first index of a
+     *  repeated character is kept, and _duplicates records that one was
+     *  seen. */
+    private void buildIndex() {
+        int max = 0;
+        for (int cp : _codePoints) {
+            max = Math.max(max, cp);
+        }
+        _maxCodePoint = max;
+        if (max < DENSE_LIMIT || max < DENSE_FACTOR * _size) {
+            _dense = new int[max + 1];
+            for (int i = _size - 1; i >= 0; i--) {
+                int cp = _codePoints[i];
+                _duplicates |= _dense[cp] != 0;
+                _dense[cp] = i + 1;
+            }
+        } else {
+            int capacity = Integer.highestOneBit(2 * _size) << 1;
+            _keys = new int[capacity];
+            _values = new int[capacity];
+            _shift = Integer.numberOfLeadingZeros(capacity - 1);
+            Arrays.fill(_keys, -1);
+            for (int i = 0; i < _size; i++) {
+                int cp = _codePoints[i];
+                int slot = slot(cp);
+                if (_keys[slot] == cp) {
+                    _duplicates = true;
+                } else {
+                    _keys[slot] = cp;
+                    _values[slot] = i;
+                }
+            }
+        }
+    }
+
+    /** Return the slot of _keys holding CP, or the empty slot where it
+     *  would go. */
+    private int slot(int cp) {
+        int mask = _keys.length - 1;
+        int slot = (cp * HASH_MULTIPLIER) >>> _shift;
+        while (_keys[slot] != cp && _keys[slot] != -1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
         return _size;
     }
 
+    /** Returns true iff every character of this alphabet is a single
+     *  char, so that the char-based methods apply to all of them. */
+    boolean bmp() {
+        return _bmp;
+    }
+
+    /** Returns the largest code point in this alphabet. */
+    int maxCodePoint() {
+        return _maxCodePoint;
+    }
+
+    /** Returns the characters of this alphabet in order. */
+    String chars() {
+        return _chars;
+    }
+
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.indexOf(ch) != -1;
+        return indexOf(ch) != -1;
+    }
+
+    /** Returns true if the code point CP is in this alphabet. */
+    boolean containsCodePoint(int cp) {
+        return indexOf(cp) != -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  It must be a single char. */
     char toChar(int index) {
-        return _chars.charAt(index);
+        int cp = _codePoints[index];
+        if (!Character.isBmpCodePoint(cp)) {
+            throw error("Character %d is not a single char!", index);
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point of character number INDEX in the
+     *  alphabet, where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (this.contains(ch)) {
-            return _chars.indexOf(ch);
-        } else {
+        return toIndex(ch);
+    }
+
+    /** Returns the index of code point CP, which must be in the
+     *  alphabet. This is the inverse of toCodePoint(). */
+    int toIndex(int cp) {
+        int index = indexOf(cp);
+        if (index == -1) {
             throw error("Character must be in Alphabet!");
         }
+        return index;
+    }
+
+    /** Returns the index of code point CP in this alphabet, or -1 if
+     *  absent. */
+    private int indexOf(int cp) {
+        if (_dense != null) {
+            return cp >= 0 && cp < _dense.length ? _dense[cp] - 1 : -1;
+        }
+        if (cp < 0) {
+            return -1;
+        }
+        int slot = slot(cp);
+        return _keys[slot] == cp ? _values[slot] : -1;
     }
 
     /** Checks for duplicates.
      * @return true for duplicates in Alphabet.
      */
     boolean duplicates() {
-        for (int index = 0; index < this.size(); index++) {
-            for (int next = index + 1; next < this.size(); next++) {
-                if (this.toChar(index) == this.toChar(next)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return _duplicates;
     }
 
+    /** Characters below this code point always use the dense index. */
+    private static final int DENSE_LIMIT = 256;
+
+    /** Above DENSE_LIMIT, the dense index is used only while the table
+     *  is at most this many times larger than the alphabet. */
+    private static final int DENSE_FACTOR = 8;
+
+    /** Multiplier (the golden ratio in 32-bit fixed point) spreading
+     *  code points over the hash table. */
+    private static final int HASH_MULTIPLIER = 0x9e3779b9;
+
     /** String containing all chars of Alphabet. */
-    private String _chars;
+    private final String _chars;
+
+    /** Code point of each character, by index. */
+    private final int[] _codePoints;
 
     /** Size of Alphabet. */
-    private int _size;
+    private final int _size;
 
-}
+    /** Largest code point of any character. */
+    private int _maxCodePoint;
+
+    /** True iff every character is in the Basic Multilingual Plane. */
+    private boolean _bmp = true;
+
+    /** Dense reverse index: one more than the index of each code point,
+     *  or 0 if absent.  Null when the hash table is in use. */
+    private int[] _dense;
 
+    /** Hash table keys: code points, or -1 for an empty slot.  Null
+     *  when _dense is in use. */
+    private int[] _keys;
+
+    /** Index of the code point in the same slot of _keys. */
+    private int[] _values;
+
+    /** Shift taking the well-mixed high bits of a hashed code point as
+     *  a slot number. */
+    private int _shift;
+
+    /** True iff some character appears twice in _chars. */
+    private boolean _duplicates;
+
+}
@@ -0,0 +1,346 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A Bombe-style known-plaintext attack.  A crib (guessed plaintext)
+ *  placed against the ciphertext gives a menu of letter pairs, one per
+ *  position, each joined by the scrambler permutation (rotors and
+ *  reflector, without the plugboard) at that position.  For each rotor
+ *  order and start position, the Bombe hypothesises a plugboard partner
+ *  for the most connected menu letter and propagates the consequences
+ *  through the menu and the symmetry of the plugboard, holding each
+ *  letter's possible partners as a bitset.  A hypothesis dies as soon
+ *  as some letter is given two partners; a position at which one
+ *  survives is a stop, reported with the plugboard pairs it implies.
+ *  Rotor orders and start positions are spread over a fork/join pool.
+ *  @author Nhu Vu
+ */
+class Bombe {
+
+    /** A Bombe for the rotors available to MACHINE, which also gives
+     *  the alphabet and the numbers of slots and pawls, testing CRIB
+     *  against CIPHERTEXT starting OFFSET characters into it. */
+    Bombe(Machine machine, String crib, String ciphertext, int offset) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        _numRotors = machine.numRotors();
+        _offset = offset;
+        if (crib.isEmpty() || offset < 0
+            || offset + crib.length() > ciphertext.length()) {
+            throw error("Crib does not fit the ciphertext.");
+        }
+        _plain = new int[crib.length()];
+        _cipher = new int[crib.length()];
+        int[] degree = new int[_size];
+        for (int i = 0; i < _plain.length; i++) {
+            _plain[i] = _alphabet.toInt(crib.charAt(i));
+            _cipher[i] = _alphabet.toInt(ciphertext.charAt(offset + i));
+            if (_plain[i] == _cipher[i]) {
+                throw error("Crib letter %c cannot encrypt to itself.",
+                            crib.charAt(i));
+            }
+            degree[_plain[i]] += 1;
+            degree[_cipher[i]] += 1;
+        }
+        _menu = new int[_size][];
+        for (int a = 0; a < _size; a++) {
+            _menu[a] = new int[degree[a]];
+            if (degree[a] > degree[_test]) {
+                _test = a;
+            }
+        }
+        Arrays.fill(degree, 0);
+        for (int i = 0; i < _plain.length; i++) {
+            _menu[_plain[i]][degree[_plain[i]]++] = i;
+            _menu[_cipher[i]][degree[_cipher[i]]++] = i;
+        }
+        _orders = machine.rotorOrders();
+        if (_orders.isEmpty()) {
+            throw error("No admissible rotor order.");
+        }
+        _specs = new MachineSpec[_orders.size()];
+        Permutation identity = new Permutation("", _alphabet);
+        for (int o = 0; o < _specs.length; o++) {
+            Machine trial = new Machine(_alphabet, _numRotors,
+                                        machine.numPawls(),
+                                        machine.availableRotors());
+            trial.insertRotors(_orders.get(o));
+            trial.setPlugboard(identity);
+            _specs[o] = new MachineSpec(trial);
+        }
+    }
+
+    /** A stop: a rotor order and message start setting at which some
+     *  plugboard is consistent with the menu, and that plugboard. */
+    static final class Stop {
+
+        /** A stop with rotors named ROTORS at SETTING, implying the
+         *  plugboard pairs in PLUGBOARD (in cycle notation). */
+        Stop(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting at the start of the message, as for
+         *  Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs implied for the menu letters, in
+         *  cycle notation. Menu letters that map to themselves are
+         *  left out. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", _rotors) + " " + _setting + " "
+                + _plugboard;
+        }
+
+        /** Rotor names. */
+        private final String[] _rotors;
+        /** Rotor setting. */
+        private final String _setting;
+        /** Implied plugboard pairs. */
+        private final String _plugboard;
+    }
+
+    /** Return the number of work units, each one rotor order with one
+     *  setting of slot 1. */
+    int units() {
+        return _orders.size() * _size;
+    }
+
+    /** Return every stop, running on POOL. */
+    List<Stop> run(ForkJoinPool pool) {
+        return pool.invoke(new Search(0, units()));
+    }
+
+    /** Return every stop, running on the common pool. */
+    List<Stop> run() {
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /** Return the stops in work unit UNIT: rotor order UNIT / size()
+     *  with slot 1 at setting UNIT % size(), trying every setting of the
+     *  other slots. */
+    List<Stop> runUnit(int unit) {
+        return new Worker().run(unit);
+    }
+
+    /** The search of work units [START, END). */
+    private class Search extends RecursiveTask<List<Stop>> {
+
+        /** A search of units START..END-1. */
+        Search(int start, int end) {
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected List<Stop> compute() {
+            if (_end - _start <= 1) {
+                return _start < _end ? runUnit(_start) : new ArrayList<>();
+            }
+            int mid = (_start + _end) >>> 1;
+            Search left = new Search(_start, mid);
+            left.fork();
+            List<Stop> right = new Search(mid, _end).compute();
+            List<Stop> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+        /** First unit searched. */
+        private final int _start;
+        /** Unit just past those searched. */
+        private final int _end;
+    }
+
+    /** The buffers used to test stops in one thread, reused for every
+     *  position it tests. */
+    private class Worker {
+
+        /** Return the stops of work unit UNIT. */
+        List<Stop> run(int unit) {
+            ArrayList<Stop> result = new ArrayList<>();
+            int order = unit / _size;
+            MachineSpec spec = _specs[order];
+            int[] start = new int[_numRotors];
+            start[1] = unit % _size;
+            do {
+                System.arraycopy(start, 0, _state.positions(), 0,
+                                 _numRotors);
+                for (int k = 0; k < _offset; k++) {
+                    spec.step(_state);
+                }
+                for (int i = 0; i < _plain.length; i++) {
+                    spec.step(_state);
+                    for (int p = 0; p < _size; p++) {
+                        _scrambler[i][p] = spec.scramble(_state, p);
+                    }
+                }
+                for (int x = 0; x < _size; x++) {
+                    if (consistent(x)) {
+                        result.add(new Stop(_orders.get(order),
+                                            setting(start), plugboard()));
+                    }
+                }
+            } while (nextSetting(start));
+            return result;
+        }
+
+        /** Return true iff the hypothesis that the test letter is
+         *  plugged to X leads to no contradiction, leaving its
+         *  consequences in _partners. */
+        private boolean consistent(int x) {
+            Arrays.fill(_partners, 0L);
+            _queued = 0;
+            if (!assume(_test, x)) {
+                return false;
+            }
+            while (_queued > 0) {
+                _queued -= 1;
+                int a = _queue[_queued] / _size, y = _queue[_queued] % _size;
+                for (int i : _menu[a]) {
+                    int b = _plain[i] == a ? _cipher[i] : _plain[i];
+                    if (!assume(b, _scrambler[i][y])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that letter A is plugged to Y, and so Y to A, queueing
+         *  any new fact for propagation.  Returns false iff either letter
+         *  already has a different partner. */
+        private boolean assume(int a, int y) {
+            return assumeOne(a, y) && assumeOne(y, a);
+        }
+
+        /** Record that letter A is plugged to Y.  Returns false iff A
+         *  already has a different partner. */
+        private boolean assumeOne(int a, int y) {
+            int word = a * _words + y / Long.SIZE;
+            long bit = 1L << (y % Long.SIZE);
+            if ((_partners[word] & bit) != 0) {
+                return true;
+            }
+            for (int w = a * _words; w < (a + 1) * _words; w++) {
+                if (_partners[w] != 0) {
+                    return false;
+                }
+            }
+            _partners[word] |= bit;
+            _queue[_queued++] = a * _size + y;
+            return true;
+        }
+
+        /** Return the plugboard pairs in _partners in cycle notation. */
+        private String plugboard() {
+            StringBuilder result = new StringBuilder();
+            for (int a = 0; a < _size; a++) {
+                for (int y = a + 1; y < _size; y++) {
+                    int word = a * _words + y / Long.SIZE;
+                    if ((_partners[word] & (1L << (y % Long.SIZE))) != 0) {
+                        if (result.length() > 0) {
+                            result.append(' ');
+                        }
+                        result.append('(').append(_alphabet.toChar(a))
+                            .append(_alphabet.toChar(y)).append(')');
+                    }
+                }
+            }
+            return result.toString();
+        }
+
+        /** State used to step through the menu positions. */
+        private final MachineState _state =
+            new MachineState(new int[_numRotors]);
+        /** Scrambler permutation at each menu position. */
+        private final int[][] _scrambler = new int[_plain.length][_size];
+        /** Bitset of the partners implied for each letter, _words long
+         *  words per letter. */
+        private final long[] _partners = new long[_size * _words];
+        /** Facts (letter * size + partner) waiting to be propagated;
+         *  each letter gets at most one. */
+        private final int[] _queue = new int[_size];
+        /** Number of entries in _queue. */
+        private int _queued;
+    }
+
+    /** Return the setting string of slot settings SETTINGS. */
+    private String setting(int[] settings) {
+        char[] result = new char[_numRotors - 1];
+        for (int s = 1; s < _numRotors; s++) {
+            result[s - 1] = _alphabet.toChar(settings[s]);
+        }
+        return new String(result);
+    }
+
+    /** Advance SETTINGS to the next setting of slots 2 and up, returning
+     *  false once they have all wrapped around. */
+    private boolean nextSetting(int[] settings) {
+        for (int i = settings.length - 1; i >= 2; i--) {
+            settings[i] += 1;
+            if (settings[i] < _size) {
+                return true;
+            }
+            settings[i] = 0;
+        }
+        return false;
+    }
+
+    /** Common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of longs in the bitset of one letter's partners. */
+    private final int _words;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Position of the crib in the ciphertext. */
+    private final int _offset;
+
+    /** Crib, as alphabet indices. */
+    private final int[] _plain;
+
+    /** Ciphertext under the crib, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Menu positions at which each letter appears. */
+    private final int[][] _menu;
+
+    /** Letter whose partner is hypothesised: the most connected one. */
+    private int _test;
+
+    /** Rotor names of each admissible rotor order, reflector first. */
+    private final List<String[]> _orders;
+
+    /** Spec of the machine with each rotor order, without plugboard. */
+    private final MachineSpec[] _specs;
+
+}
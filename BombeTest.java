@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Nhu Vu
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Rotor order of the test key. */
+    private static final String[] ORDER = { "B", "IV", "I", "III" };
+
+    /** Return the ciphertext of RotorSearchTest.ENGLISH under the test
+     *  key, with plugboard PLUGBOARD. */
+    private static String encrypt(String plugboard) {
+        Machine machine = RotorSearchTest.smallMachine();
+        machine.insertRotors(ORDER);
+        machine.setRotors("QDM");
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        return machine.convert(RotorSearchTest.ENGLISH);
+    }
+
+    /** Return the work unit of ORDER with slot 1 at SETTING. */
+    private static int unit(Machine machine, char setting) {
+        List<String[]> orders = machine.rotorOrders();
+        for (int o = 0; o < orders.size(); o++) {
+            if (Arrays.equals(ORDER, orders.get(o))) {
+                return o * UPPER.size() + UPPER.toInt(setting);
+            }
+        }
+        throw new AssertionError("Order not found.");
+    }
+
+    @Test
+    public void testFindsStop() {
+        String cipher = encrypt("(HQ) (EX) (IP) (TR) (BY)");
+        String crib = RotorSearchTest.ENGLISH.substring(20, 45);
+        Machine machine = RotorSearchTest.smallMachine();
+        Bombe bombe = new Bombe(machine, crib, cipher, 20);
+        assertEquals(24 * 26, bombe.units());
+
+        List<Bombe.Stop> stops = bombe.runUnit(unit(machine, 'Q'));
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            assertArrayEquals(ORDER, stop.rotors());
+            if (stop.setting().equals("QDM")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        assertTrue(found.plugboard().contains("(EX)"));
+        assertTrue(found.plugboard().contains("(RT)"));
+        assertTrue(stops.size() < 26 * 26);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSelfEncipheringCrib() {
+        String cipher = encrypt("");
+        new Bombe(RotorSearchTest.smallMachine(), cipher.substring(0, 5),
+                  cipher, 0);
+    }
+}
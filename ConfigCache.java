@@ -0,0 +1,255 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/** A cache of compiled machine configurations.  Each configuration is
+ *  stored in binary form (alphabet, rotor names, types, notches and
+ *  wiring tables) in a file named by the SHA-256 hash of the text of
+ *  the configuration, so that a later run with the same configuration
+ *  can rebuild its machine with a single read and no parsing.  Cache
+ *  failures are never errors: a missing, stale or damaged entry just
+ *  means the configuration is parsed again.
+ *
+ *  Entries are trusted as they are, so anyone who can write to the
+ *  cache directory can change the machine a configuration yields.  No
+ *  cache is used unless CACHE_DIR_PROPERTY names a directory, which
+ *  should be writable only by its owner; a directory the cache creates
+ *  is made so where the file system allows.
+ *  @author Nhu Vu
+ */
+class ConfigCache {
+
+    /** A cache keeping its entries in DIR. */
+    ConfigCache(Path dir) {
+        _dir = dir;
+    }
+
+    /** Return a cache in the directory named by the system property
+     *  CACHE_DIR_PROPERTY, or null if it is not set. */
+    static ConfigCache fromProperty() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        return dir == null || dir.isEmpty() ? null
+            : new ConfigCache(Paths.get(dir));
+    }
+
+    /** Return the machine compiled from the configuration whose text is
+     *  SOURCE, or null if there is no usable cache entry for it. */
+    Machine load(byte[] source) {
+        byte[] hash = hash(source);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(entry(hash));
+        } catch (IOException excp) {
+            return null;
+        }
+        if (data.length < CHECKSUM_SIZE
+            || checksum(data, data.length - CHECKSUM_SIZE)
+               != ByteBuffer.wrap(data).getLong(data.length - CHECKSUM_SIZE)) {
+            return null;
+        }
+        try {
+            return decode(ByteBuffer.wrap(data, 0, data.length - CHECKSUM_SIZE),
+                          hash);
+        } catch (BufferUnderflowException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Record MACHINE as compiled from the configuration whose text is
+     *  SOURCE.  The entry is written to a temporary file and renamed into
+     *  place, so concurrent runs never see a partial entry. */
+    void store(byte[] source, Machine machine) {
+        byte[] hash = hash(source);
+        try {
+            if (!Files.isDirectory(_dir)) {
+                createPrivateDirectory(_dir);
+            }
+            Path tmp = Files.createTempFile(_dir, "entry", ".tmp");
+            try {
+                Files.write(tmp, encode(machine, hash));
+                Files.move(tmp, entry(hash),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Create the directory DIR, and any missing parents, with access
+     *  for its owner only where the file system supports it. */
+    private static void createPrivateDirectory(Path dir) throws IOException {
+        try {
+            Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(
+                PosixFilePermissions.fromString(OWNER_ONLY)));
+        } catch (UnsupportedOperationException excp) {
+            Files.createDirectories(dir);
+        }
+    }
+
+    /** Return the cache file for the configuration hashed to HASH. */
+    private Path entry(byte[] hash) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : hash) {
+            name.append(String.format("%02x", b));
+        }
+        return _dir.resolve(name.append(SUFFIX).toString());
+    }
+
+    /** Return the SHA-256 digest of SOURCE. */
+    private static byte[] hash(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Return the binary form of MACHINE, tagged with HASH and followed
+     *  by a checksum of the rest. */
+    static byte[] encode(Machine machine, byte[] hash) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.write(hash);
+        Alphabet alphabet = machine.alphabet();
+        writeString(out, alphabet.chars());
+        out.writeInt(machine.numRotors());
+        out.writeInt(machine.numPawls());
+        out.writeInt(machine.availableRotors().size());
+        for (Rotor rotor : machine.availableRotors()) {
+            writeString(out, rotor.name());
+            if (rotor.reflecting()) {
+                out.writeByte('R');
+            } else if (rotor.rotates()) {
+                out.writeByte('M');
+            } else {
+                out.writeByte('N');
+            }
+            writeString(out, rotor.rotates()
+                        ? ((MovingRotor) rotor).notches() : "");
+            Permutation perm = rotor.permutation();
+            for (int i = 0; i < perm.size(); i++) {
+                out.writeInt(perm.permute(i));
+            }
+        }
+        out.flush();
+        out.writeLong(checksum(bytes.toByteArray(), bytes.size()));
+        return bytes.toByteArray();
+    }
+
+    /** Return the CRC-32 of the first LEN bytes of DATA. */
+    private static long checksum(byte[] data, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, len);
+        return crc.getValue();
+    }
+
+    /** Return the machine encoded in DATA, or null if DATA is not an
+     *  entry of this format for the configuration hashed to HASH. */
+    static Machine decode(ByteBuffer data, byte[] hash) {
+        if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+            return null;
+        }
+        byte[] stored = new byte[hash.length];
+        data.get(stored);
+        if (!Arrays.equals(stored, hash)) {
+            return null;
+        }
+        Alphabet alphabet = new Alphabet(readString(data));
+        int numRotors = data.getInt();
+        int pawls = data.getInt();
+        int count = data.getInt();
+        if (numRotors < 0 || pawls < 0 || count < 0
+            || count > data.remaining() / MIN_ROTOR_SIZE) {
+            return null;
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>(count);
+        int[] wiring = new int[alphabet.size()];
+        for (int r = 0; r < count; r++) {
+            String name = readString(data);
+            char type = (char) data.get();
+            String notches = readString(data);
+            for (int i = 0; i < wiring.length; i++) {
+                wiring[i] = data.getInt();
+            }
+            Permutation perm = new Permutation(wiring, alphabet);
+            switch (type) {
+            case 'M':
+                rotors.add(new MovingRotor(name, perm, notches));
+                break;
+            case 'N':
+                rotors.add(new FixedRotor(name, perm));
+                break;
+            case 'R':
+                rotors.add(new Reflector(name, perm));
+                break;
+            default:
+                return null;
+            }
+        }
+        return new Machine(alphabet, numRotors, pawls, rotors);
+    }
+
+    /** Write S to OUT as a length followed by its characters. */
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Read a string written by writeString from DATA. */
+    private static String readString(ByteBuffer data) {
+        int len = data.getInt();
+        if (len < 0 || len > data.remaining() / 2) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[len];
+        data.asCharBuffer().get(chars);
+        data.position(data.position() + 2 * len);
+        return new String(chars);
+    }
+
+    /** System property naming the cache directory. */
+    static final String CACHE_DIR_PROPERTY = "enigma.cache.dir";
+
+    /** Permissions of a cache directory the cache creates. */
+    private static final String OWNER_ONLY = "rwx------";
+
+    /** Fewest bytes an encoded rotor takes: two empty strings and a
+     *  type. */
+    private static final int MIN_ROTOR_SIZE = 2 * Integer.BYTES + 1;
+
+    /** Suffix of cache entry file names. */
+    private static final String SUFFIX = ".enigmac";
+
+    /** First word of every cache entry. */
+    private static final int MAGIC = 0x454e4743;
+
+    /** Size in bytes of the checksum that ends every entry. */
+    private static final int CHECKSUM_SIZE = 8;
+
+    /** Version of the entry format. */
+    private static final int VERSION = 1;
+
+    /** Directory holding the cache entries. */
+    private final Path _dir;
+
+}
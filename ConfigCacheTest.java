@@ -0,0 +1,97 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigCache class.
+ *  @author Nhu Vu
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Directory for cache entries. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Stand-in for the text of a configuration file. */
+    private static final byte[] SOURCE =
+        "naval configuration".getBytes(StandardCharsets.UTF_8);
+
+    /** Size of a configuration hash, in bytes. */
+    private static final int HASH_SIZE = 32;
+
+    /** Set up M as sampleMachine() is, and return it. */
+    private static Machine setUp(Machine m) {
+        m.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                       m.alphabet()));
+        return m;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        ConfigCache cache = new ConfigCache(folder.getRoot().toPath());
+        assertNull(cache.load(SOURCE));
+        cache.store(SOURCE, navalMachine());
+        Machine loaded = cache.load(SOURCE);
+        assertNotNull(loaded);
+        assertEquals(navalMachine().availableRotors().size(),
+                     loaded.availableRotors().size());
+        assertEquals(CIPHER, setUp(loaded).convert(PLAIN));
+    }
+
+    @Test
+    public void testCorruptCounts() throws Exception {
+        byte[] hash = new byte[HASH_SIZE];
+        byte[] entry = ConfigCache.encode(navalMachine(), hash);
+        int countAt = 2 * Integer.BYTES + HASH_SIZE
+            + Integer.BYTES + 2 * UPPER_STRING.length() + 2 * Integer.BYTES;
+        assertNotNull(ConfigCache.decode(
+            ByteBuffer.wrap(entry, 0, entry.length - Long.BYTES), hash));
+        for (int count : new int[] { -1, Integer.MAX_VALUE }) {
+            ByteBuffer data = ByteBuffer.wrap(entry, 0, entry.length
+                                              - Long.BYTES);
+            data.putInt(countAt, count);
+            assertNull(ConfigCache.decode(data, hash));
+        }
+    }
+
+    @Test
+    public void testOptIn() {
+        String old = System.clearProperty(ConfigCache.CACHE_DIR_PROPERTY);
+        try {
+            assertNull(ConfigCache.fromProperty());
+            System.setProperty(ConfigCache.CACHE_DIR_PROPERTY,
+                               folder.getRoot().toString());
+            assertNotNull(ConfigCache.fromProperty());
+        } finally {
+            if (old == null) {
+                System.clearProperty(ConfigCache.CACHE_DIR_PROPERTY);
+            } else {
+                System.setProperty(ConfigCache.CACHE_DIR_PROPERTY, old);
+            }
+        }
+    }
+
+    @Test
+    public void testStaleEntry() {
+        ConfigCache cache = new ConfigCache(folder.getRoot().toPath());
+        cache.store(SOURCE, navalMachine());
+        byte[] changed = "other configuration".getBytes(StandardCharsets.UTF_8);
+        assertNull(cache.load(changed));
+    }
+
+}
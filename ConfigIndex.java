@@ -0,0 +1,423 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+import static enigma.EnigmaException.*;
+
+/** An index of the rotor descriptions in a large configuration file,
+ *  so that a machine can be set up from it without parsing every rotor.
+ *
+ *  The index records the extent of the header (alphabet, slots and
+ *  pawls) and the name, byte offset and byte length of each rotor
+ *  description.  It is built by one pass over the configuration, and
+ *  rotors are then read with a single positioned read each, and only
+ *  when inserted, so a malformed description is reported only if its
+ *  rotor is used.  Rotor descriptions are taken to be separated by
+ *  ASCII whitespace.
+ *
+ *  The index may also be kept in a file beside the configuration,
+ *  named with SUFFIX added, along with the size and modification time
+ *  of the configuration it describes, a CRC-32C of SAMPLE_BLOCKS blocks
+ *  spread evenly through it (the whole of it, if it is small), and a
+ *  CRC-32C of all of it.  Load uses the index file while the size, time
+ *  and sampled checksum still match, which reads a fixed amount of the
+ *  configuration however large it is.  A change that keeps the size
+ *  and time and misses every sampled block goes unnoticed, so setting
+ *  the system property STRICT_PROPERTY to true also checks the full
+ *  checksum, at the cost of reading the whole configuration on every
+ *  load.  As with ConfigCache, a missing, stale or unwritable index
+ *  file is never an error.
+ *  @author Nhu Vu
+ */
+final class ConfigIndex {
+
+    /** The index of CONFIG, which was SIZE bytes long, last modified at
+     *  MODIFIED milliseconds and had the sampled CRC-32C SAMPLE and the
+     *  full CRC-32C CHECKSUM when indexed, whose header ends at byte
+     *  HEADEREND, and whose rotor descriptions are named NAMES and
+     *  occupy LENGTHS bytes from OFFSETS. */
+    private ConfigIndex(Path config, long size, long modified, long sample,
+                        long checksum, long headerEnd,
+                        ArrayList<String> names, long[] offsets,
+                        int[] lengths) {
+        _config = config;
+        _size = size;
+        _modified = modified;
+        _sample = sample;
+        _checksum = checksum;
+        _headerEnd = headerEnd;
+        _names = names;
+        _offsets = offsets;
+        _lengths = lengths;
+    }
+
+    /** Return a machine configured from the file CONFIG, using or
+     *  rebuilding its index file, whose rotors are read only when
+     *  inserted. */
+    static Machine load(Path config) throws IOException {
+        ConfigIndex index = read(config);
+        if (index == null) {
+            index = scan(config);
+            index.write();
+        }
+        return index.machine();
+    }
+
+    /** Return the name of the index file of CONFIG. */
+    static Path indexFile(Path config) {
+        return config.resolveSibling(config.getFileName() + SUFFIX);
+    }
+
+    /** Return the number of rotor descriptions I index. */
+    int size() {
+        return _names.size();
+    }
+
+    /** Return a machine configured from my header, with a library of
+     *  my rotors that reads each on first use. */
+    Machine machine() throws IOException {
+        Scanner header = new Scanner(text(0, (int) _headerEnd));
+        try {
+            Alphabet alphabet = new Alphabet(header.next());
+            int rotors = header.nextInt();
+            int pawls = header.nextInt();
+            RotorLibrary library = new RotorLibrary(alphabet);
+            for (int i = 0; i < _names.size(); i++) {
+                long offset = _offsets[i];
+                int length = _lengths[i];
+                library.add(_names.get(i),
+                            () -> description(offset, length));
+            }
+            return new Machine(alphabet, rotors, pawls, library);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Return the LENGTH bytes of my configuration from OFFSET as
+     *  text, reporting failure as an EnigmaException. */
+    private String description(long offset, int length) {
+        try {
+            return text(offset, length);
+        } catch (IOException excp) {
+            throw error("could not read %s", _config);
+        }
+    }
+
+    /** Return the LENGTH bytes of my configuration from OFFSET as
+     *  text. */
+    private String text(long offset, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(_config)) {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, offset + bytes.position()) < 0) {
+                    throw error("configuration file changed");
+                }
+            }
+        }
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    /** Return the index of CONFIG built by reading it through once. */
+    static ConfigIndex scan(Path config) throws IOException {
+        long size = Files.size(config);
+        long modified = Files.getLastModifiedTime(config).toMillis();
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<long[]> extents = new ArrayList<>();
+        ByteArrayOutputStream token = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long pos = 0, start = -1, headerEnd = -1;
+        int tokens = 0, field = 0;
+        byte first = 0;
+        CRC32C crc = new CRC32C();
+        try (InputStream in = Files.newInputStream(config)) {
+            for (int n = in.read(buffer); ; n = in.read(buffer)) {
+                if (n > 0) {
+                    crc.update(buffer, 0, n);
+                }
+                for (int k = 0; k < Math.max(n, 1); k++, pos++) {
+                    boolean space = n < 0 || isSpace(buffer[k]);
+                    if (!space && start < 0) {
+                        start = pos;
+                        first = buffer[k];
+                        token.reset();
+                    }
+                    if (!space) {
+                        token.write(buffer[k]);
+                        continue;
+                    } else if (start < 0) {
+                        continue;
+                    }
+                    tokens += 1;
+                    if (tokens == HEADER_TOKENS) {
+                        headerEnd = pos;
+                    } else if (tokens > HEADER_TOKENS) {
+                        if (field >= 2 && first != '(') {
+                            field = 0;
+                        }
+                        if (field == 0) {
+                            names.add(token.toString(StandardCharsets.UTF_8));
+                            extents.add(new long[] { start, pos });
+                        }
+                        extents.get(extents.size() - 1)[1] = pos;
+                        field += 1;
+                    }
+                    start = -1;
+                }
+                if (n < 0) {
+                    break;
+                }
+            }
+        }
+        if (headerEnd < 0) {
+            throw error("configuration file truncated");
+        }
+        long[] offsets = new long[names.size()];
+        int[] lengths = new int[names.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = extents.get(i)[0];
+            lengths[i] = Math.toIntExact(extents.get(i)[1] - offsets[i]);
+        }
+        return new ConfigIndex(config, size, modified,
+                               sampleChecksum(config, size), crc.getValue(),
+                               headerEnd, names, offsets, lengths);
+    }
+
+    /** Return the CRC-32C of SAMPLE_BLOCKS blocks of SAMPLE_SIZE bytes
+     *  spread evenly through CONFIG, which is SIZE bytes long, from its
+     *  first block to its last, or of all of it if it is no larger than
+     *  that. */
+    private static long sampleChecksum(Path config, long size)
+        throws IOException {
+        CRC32C crc = new CRC32C();
+        boolean whole = size <= (long) SAMPLE_BLOCKS * SAMPLE_SIZE;
+        ByteBuffer block =
+            ByteBuffer.allocate(whole ? (int) size : SAMPLE_SIZE);
+        try (FileChannel channel = FileChannel.open(config)) {
+            for (int i = 0; i < (whole ? 1 : SAMPLE_BLOCKS); i++) {
+                long offset =
+                    (size - block.capacity()) * i / (SAMPLE_BLOCKS - 1);
+                block.clear();
+                readFully(channel, block, offset);
+                crc.update(block.flip());
+            }
+        }
+        return crc.getValue();
+    }
+
+    /** Fill BLOCK from CHANNEL starting at byte OFFSET. */
+    private static void readFully(FileChannel channel, ByteBuffer block,
+                                  long offset) throws IOException {
+        while (block.hasRemaining()) {
+            if (channel.read(block, offset + block.position()) < 0) {
+                throw error("configuration file changed");
+            }
+        }
+    }
+
+    /** Return the CRC-32C of the contents of CONFIG. */
+    private static long checksum(Path config) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(config)) {
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /** Return true iff B is an ASCII whitespace byte. */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b >= '\t' && b <= '\r';
+    }
+
+    /** Write me to the index file of my configuration, quietly giving
+     *  up if it cannot be written. */
+    void write() {
+        Path file = indexFile(_config);
+        Path temp = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(_size);
+            out.writeLong(_modified);
+            out.writeLong(_sample);
+            out.writeLong(_checksum);
+            out.writeLong(_headerEnd);
+            out.writeInt(_names.size());
+            for (int i = 0; i < _names.size(); i++) {
+                byte[] name = _names.get(i).getBytes(StandardCharsets.UTF_8);
+                if (name.length > SHORT_MASK) {
+                    return;
+                }
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeLong(_offsets[i]);
+                out.writeInt(_lengths[i]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeLong(crc.getValue());
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(),
+                                        ".index", ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | UnsupportedOperationException excp) {
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                return;
+            }
+        }
+    }
+
+    /** Return the index of CONFIG stored in its index file, or null if
+     *  there is none or it does not describe CONFIG as it now is.  The
+     *  whole of CONFIG is checked against the index if the system
+     *  property STRICT_PROPERTY is true, and only sampled blocks of it
+     *  otherwise. */
+    static ConfigIndex read(Path config) throws IOException {
+        return read(config, Boolean.getBoolean(STRICT_PROPERTY));
+    }
+
+    /** Return the index of CONFIG stored in its index file, or null if
+     *  there is none or it does not describe CONFIG as it now is,
+     *  checking the whole of CONFIG against the index iff STRICT and
+     *  only sampled blocks of it otherwise. */
+    static ConfigIndex read(Path config, boolean strict) throws IOException {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(indexFile(config));
+        } catch (IOException excp) {
+            return null;
+        }
+        if (data.length < CHECKSUM_SIZE) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - CHECKSUM_SIZE);
+        if (crc.getValue() != buf.getLong(data.length - CHECKSUM_SIZE)) {
+            return null;
+        }
+        buf.limit(data.length - CHECKSUM_SIZE);
+        long size = Files.size(config);
+        long modified = Files.getLastModifiedTime(config).toMillis();
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+                || buf.getLong() != size || buf.getLong() != modified) {
+                return null;
+            }
+            long sample = buf.getLong();
+            long checksum = buf.getLong();
+            long headerEnd = buf.getLong();
+            int count = buf.getInt();
+            ArrayList<String> names = new ArrayList<>(count);
+            long[] offsets = new long[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buf.getShort() & SHORT_MASK];
+                buf.get(name);
+                names.add(new String(name, StandardCharsets.UTF_8));
+                offsets[i] = buf.getLong();
+                lengths[i] = buf.getInt();
+            }
+            if (sample != sampleChecksum(config, size)
+                || strict && checksum != checksum(config)) {
+                return null;
+            }
+            return new ConfigIndex(config, size, modified, sample, checksum,
+                                   headerEnd, names, offsets, lengths);
+        } catch (BufferUnderflowException | NegativeArraySizeException
+                 | IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** System property that, when true, makes Main keep the index of a
+     *  large configuration in an index file. */
+    static final String INDEX_PROPERTY = "enigma.config.index";
+
+    /** System property that, when true, makes an index file be used
+     *  only if the checksum of the whole configuration still matches. */
+    static final String STRICT_PROPERTY = "enigma.config.index.strict";
+
+    /** Number of blocks of a configuration whose checksum is checked
+     *  whenever its index file is used. */
+    static final int SAMPLE_BLOCKS = 8;
+
+    /** Size in bytes of each sampled block. */
+    static final int SAMPLE_SIZE = 1 << 12;
+
+    /** Suffix of index file names. */
+    static final String SUFFIX = ".idx";
+
+    /** Number of tokens in a configuration header. */
+    private static final int HEADER_TOKENS = 3;
+
+    /** Size of the buffer used to scan a configuration. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** First word of every index file. */
+    private static final int MAGIC = 0x454e4749;
+
+    /** Version of the index file format. */
+    private static final int VERSION = 3;
+
+    /** Size in bytes of the checksum that ends every index file. */
+    private static final int CHECKSUM_SIZE = 8;
+
+    /** Mask selecting the unsigned value of a short. */
+    private static final int SHORT_MASK = 0xffff;
+
+    /** The configuration file I index. */
+    private final Path _config;
+
+    /** Byte offset of the end of the header. */
+    private final long _headerEnd;
+
+    /** Name of each rotor description. */
+    private final ArrayList<String> _names;
+
+    /** Byte offset of each rotor description. */
+    private final long[] _offsets;
+
+    /** Byte length of each rotor description. */
+    private final int[] _lengths;
+
+    /** Size of the configuration when indexed. */
+    private final long _size;
+
+    /** Modification time of the configuration when indexed, in
+     *  milliseconds. */
+    private final long _modified;
+
+    /** CRC-32C of the sampled blocks of the configuration when
+     *  indexed. */
+    private final long _sample;
+
+    /** CRC-32C of the configuration when indexed. */
+    private final long _checksum;
+
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigIndex class.
+ *  @author Nhu Vu
+ */
+public class ConfigIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Directory for configurations and their indices. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Number of spaces padding the configuration that is large enough
+     *  for only samples of it to be checked. */
+    private static final int LARGE_PADDING = 200000;
+
+    /** Return the text of a configuration of the naval rotors, laid out
+     *  irregularly. */
+    private static String navalConfig() {
+        StringBuilder config = new StringBuilder();
+        config.append("  ").append(UPPER_STRING).append("\n 5 3\n");
+        for (int i = 0; i < NOTCHES.length; i += 2) {
+            config.append(NOTCHES[i]).append(" M").append(NOTCHES[i + 1])
+                .append("\t").append(NAVALA.get(NOTCHES[i])).append("\n");
+        }
+        config.append("Beta N ").append(NAVALA.get("Beta"))
+            .append(" Gamma N ").append(NAVALA.get("Gamma"))
+            .append("\n\nB R ").append(NAVALA.get("B"))
+            .append("\nC R\n").append(NAVALA.get("C"));
+        return config.toString();
+    }
+
+    /** Write the naval configuration to a new file and return it. */
+    private Path writeConfig() throws IOException {
+        Path config = folder.getRoot().toPath().resolve("naval.conf");
+        Files.write(config, navalConfig().getBytes(StandardCharsets.UTF_8));
+        return config;
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        Path config = writeConfig();
+        Machine machine = ConfigIndex.load(config);
+        assertTrue(Files.exists(ConfigIndex.indexFile(config)));
+        assertEquals(5, machine.numRotors());
+        assertEquals(3, machine.numPawls());
+        assertEquals(12, machine.library().size());
+        assertEquals(0, machine.library().loaded());
+
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        assertEquals(CIPHER, machine.convert(PLAIN));
+        assertEquals(5, machine.library().loaded());
+        assertEquals("C", machine.library().get("C").name());
+        assertTrue(machine.library().get("C").reflecting());
+    }
+
+    @Test
+    public void testReuseAndRebuild() throws IOException {
+        Path config = writeConfig();
+        assertNull(ConfigIndex.read(config));
+        ConfigIndex.scan(config).write();
+        ConfigIndex index = ConfigIndex.read(config);
+        assertNotNull(index);
+        assertEquals(12, index.size());
+
+        Files.setLastModifiedTime(config, FileTime.fromMillis(
+            Files.getLastModifiedTime(config).toMillis() + 1000));
+        assertNull(ConfigIndex.read(config));
+        ConfigIndex.load(config);
+        assertNotNull(ConfigIndex.read(config));
+    }
+
+    @Test
+    public void testSameSizeAndTime() throws IOException {
+        Path config = writeConfig();
+        ConfigIndex.scan(config).write();
+        FileTime modified = Files.getLastModifiedTime(config);
+        String changed = navalConfig().replace("I MQ", "I MR");
+        Files.write(config, changed.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(config, modified);
+        assertNull(ConfigIndex.read(config));
+        Machine machine = ConfigIndex.load(config);
+        assertEquals("R",
+                     ((MovingRotor) machine.library().get("I")).notches());
+    }
+
+    @Test
+    public void testSampledAndStrict() throws IOException {
+        String naval = navalConfig();
+        int body = naval.indexOf("I M");
+        byte[] text = (naval.substring(0, body) + " ".repeat(LARGE_PADDING)
+                       + naval.substring(body))
+            .getBytes(StandardCharsets.UTF_8);
+        Path config = folder.getRoot().toPath().resolve("large.conf");
+        Files.write(config, text);
+        ConfigIndex.scan(config).write();
+        assertNotNull(ConfigIndex.read(config, false));
+        assertNotNull(ConfigIndex.read(config, true));
+
+        int span = text.length - ConfigIndex.SAMPLE_SIZE;
+        int gaps = ConfigIndex.SAMPLE_BLOCKS - 1;
+        int unsampled =
+            (span / gaps + ConfigIndex.SAMPLE_SIZE + 2 * span / gaps) / 2;
+        assertEquals(' ', text[unsampled]);
+        FileTime modified = Files.getLastModifiedTime(config);
+        text[unsampled] = '\n';
+        Files.write(config, text);
+        Files.setLastModifiedTime(config, modified);
+        assertNotNull(ConfigIndex.read(config, false));
+        assertNull(ConfigIndex.read(config, true));
+
+        text[text.length - 1] ^= 1;
+        Files.write(config, text);
+        Files.setLastModifiedTime(config, modified);
+        assertNull(ConfigIndex.read(config, false));
+    }
+
+    @Test
+    public void testCorruptIndex() throws IOException {
+        Path config = writeConfig();
+        ConfigIndex.scan(config).write();
+        Path file = ConfigIndex.indexFile(config);
+        byte[] data = Files.readAllBytes(file);
+        data[data.length / 2] ^= 1;
+        Files.write(file, data);
+        assertNull(ConfigIndex.read(config));
+        Machine machine = ConfigIndex.load(config);
+        assertEquals(12, machine.library().size());
+    }
+
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** A growable text held as the alphabet indices of its characters, one
+ *  byte each, for alphabets of at most MAX_SYMBOLS characters.  Text is
+ *  encoded once as it is read, converted in place, and written straight
+ *  from its indices by a GroupWriter, so it occupies a quarter of the
+ *  memory of int indices and half that of chars.
+ *  @author Nhu Vu
+ */
+final class EncodedText {
+
+    /** Largest alphabet whose indices fit in a byte. */
+    static final int MAX_SYMBOLS = 256;
+
+    /** An empty text over ALPHABET with room for CAPACITY characters
+     *  before it must grow. */
+    EncodedText(Alphabet alphabet, int capacity) {
+        if (!fits(alphabet)) {
+            throw error("Alphabet has more than %d characters or "
+                        + "supplementary characters.", MAX_SYMBOLS);
+        }
+        _alphabet = alphabet;
+        _chars = new char[alphabet.size()];
+        for (int i = 0; i < _chars.length; i++) {
+            _chars[i] = alphabet.toChar(i);
+        }
+        _bytes = new byte[Math.max(capacity, 1)];
+    }
+
+    /** Return the encoding of the characters of TEXT in ALPHABET. */
+    static EncodedText encode(Alphabet alphabet, CharSequence text) {
+        EncodedText result = new EncodedText(alphabet, text.length());
+        for (int i = 0; i < text.length(); i++) {
+            result.append(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return true iff ALPHABET is small enough to be encoded, and all
+     *  its characters are single chars. */
+    static boolean fits(Alphabet alphabet) {
+        return alphabet.size() <= MAX_SYMBOLS && alphabet.bmp();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return my number of characters. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the number of characters I hold without growing. */
+    int capacity() {
+        return _bytes.length;
+    }
+
+    /** Return the alphabet index of my character K. */
+    int get(int k) {
+        return _bytes[k] & BYTE_MASK;
+    }
+
+    /** Set my character K to the one with alphabet index C. */
+    void set(int k, int c) {
+        _bytes[k] = (byte) c;
+    }
+
+    /** Append character CH, which must be in my alphabet. */
+    void append(char ch) {
+        if (_length == _bytes.length) {
+            byte[] bigger = new byte[2 * _bytes.length];
+            System.arraycopy(_bytes, 0, bigger, 0, _length);
+            _bytes = bigger;
+        }
+        _bytes[_length] = (byte) _alphabet.toInt(ch);
+        _length += 1;
+    }
+
+    /** Remove all my characters. */
+    void clear() {
+        _length = 0;
+    }
+
+    /** Return my backing array, whose first length() bytes are my
+     *  characters' indices.  It is replaced when I grow. */
+    byte[] bytes() {
+        return _bytes;
+    }
+
+    /** Store my LEN characters starting at K into DST starting at
+     *  DSTOFF. */
+    void decode(int k, int len, char[] dst, int dstOff) {
+        for (int i = 0; i < len; i++) {
+            dst[dstOff + i] = _chars[_bytes[k + i] & BYTE_MASK];
+        }
+    }
+
+    @Override
+    public String toString() {
+        char[] result = new char[_length];
+        decode(0, _length, result, 0);
+        return new String(result);
+    }
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Alphabet of my characters. */
+    private final Alphabet _alphabet;
+
+    /** Character of each alphabet index. */
+    private final char[] _chars;
+
+    /** Alphabet index of each character, then unused room. */
+    private byte[] _bytes;
+
+    /** Number of characters. */
+    private int _length;
+
+}
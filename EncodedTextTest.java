@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EncodedText class.
+ *  @author Nhu Vu
+ */
+public class EncodedTextTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testEncode() {
+        EncodedText text = EncodedText.encode(UPPER, "HIAWATHA");
+        assertEquals(8, text.length());
+        assertEquals(7, text.get(0));
+        assertEquals(0, text.get(7));
+        assertEquals("HIAWATHA", text.toString());
+        text.set(0, 25);
+        assertEquals("ZIAWATHA", text.toString());
+        char[] out = new char[4];
+        text.decode(2, 3, out, 1);
+        assertArrayEquals(new char[] { 0, 'A', 'W', 'A' }, out);
+    }
+
+    @Test
+    public void testGrowAndClear() {
+        EncodedText text = new EncodedText(UPPER, 2);
+        for (int i = 0; i < 100; i++) {
+            text.append(UPPER.toChar(i % 26));
+        }
+        assertEquals(100, text.length());
+        assertTrue(text.capacity() >= 100);
+        assertEquals('V', text.toString().charAt(99));
+        text.clear();
+        assertEquals(0, text.length());
+        assertEquals("", text.toString());
+    }
+
+    @Test
+    public void testFullByteAlphabet() {
+        char[] chars = new char[EncodedText.MAX_SYMBOLS];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (0x100 + i);
+        }
+        Alphabet alpha = new Alphabet(new String(chars));
+        EncodedText text = EncodedText.encode(alpha, "\u01ff\u0100");
+        assertEquals(255, text.get(0));
+        assertEquals(0, text.get(1));
+        assertEquals("\u01ff\u0100", text.toString());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testAlphabetTooLarge() {
+        char[] chars = new char[EncodedText.MAX_SYMBOLS + 1];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (0x100 + i);
+        }
+        new EncodedText(new Alphabet(new String(chars)), 1);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        EncodedText.encode(UPPER, "ABC1");
+    }
+}
@@ -13,8 +13,19 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
+    /** A rotor like ROTOR, sharing its permutation and conversion
+     *  tables. */
+    FixedRotor(FixedRotor rotor) {
+        super(rotor);
+    }
+
     @Override
     int setting() {
         return super.setting();
     }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
 }
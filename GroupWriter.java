@@ -0,0 +1,123 @@
+package enigma;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+import static enigma.EnigmaException.*;
+
+/** Writes the letters of converted message lines, given as alphabet
+ *  indices, as bytes in some charset, in groups of GROUP_SIZE separated
+ *  by spaces.  The bytes of each letter of the alphabet are worked out
+ *  once, so text held as an EncodedText goes from indices to output
+ *  bytes in a single pass, without being decoded to chars first.
+ *  @author Nhu Vu
+ */
+final class GroupWriter {
+
+    /** Number of letters in each output group. */
+    static final int GROUP_SIZE = 5;
+
+    /** A writer of the letters of ALPHABET in CHARSET, which must be
+     *  able to encode all of them, starting at the beginning of a
+     *  line. */
+    GroupWriter(Alphabet alphabet, Charset charset) {
+        CharsetEncoder encoder = charset.newEncoder();
+        _letters = new byte[alphabet.size()][];
+        boolean single = true;
+        for (int c = 0; c < _letters.length; c++) {
+            String letter =
+                new String(Character.toChars(alphabet.toCodePoint(c)));
+            if (!encoder.canEncode(letter)) {
+                throw error("Character %s cannot be written in %s",
+                            letter, charset);
+            }
+            _letters[c] = letter.getBytes(charset);
+            _maxBytes = Math.max(_maxBytes, _letters[c].length + 1);
+            single &= _letters[c].length == 1;
+        }
+        if (single) {
+            _single = new byte[_letters.length];
+            for (int c = 0; c < _letters.length; c++) {
+                _single[c] = _letters[c][0];
+            }
+        }
+    }
+
+    /** Return the most bytes written for one letter, counting the space
+     *  that may precede it. */
+    int maxBytes() {
+        return _maxBytes;
+    }
+
+    /** Write the letter with alphabet index C to OUT. */
+    void letter(int c, ByteBuffer out) {
+        if (_column > 0 && _column % GROUP_SIZE == 0) {
+            out.put(SPACE);
+        }
+        out.put(_letters[c]);
+        _column += 1;
+    }
+
+    /** Write the LEN letters of TEXT starting at K to OUT, which must
+     *  have room for LEN * maxBytes() bytes. */
+    void letters(EncodedText text, int k, int len, ByteBuffer out) {
+        if (out.remaining() < (long) len * _maxBytes) {
+            throw new BufferOverflowException();
+        }
+        byte[] src = text.bytes();
+        if (_single == null || !out.hasArray()) {
+            for (int i = k; i < k + len; i++) {
+                letter(src[i] & BYTE_MASK, out);
+            }
+            return;
+        }
+        byte[] dst = out.array();
+        int p = out.arrayOffset() + out.position();
+        int column = _column;
+        for (int i = k; i < k + len; i++) {
+            if (column > 0 && column % GROUP_SIZE == 0) {
+                dst[p++] = SPACE;
+            }
+            dst[p++] = _single[src[i] & BYTE_MASK];
+            column += 1;
+        }
+        out.position(p - out.arrayOffset());
+        _column = column;
+    }
+
+    /** End the current line, writing a newline to OUT. */
+    void newline(ByteBuffer out) {
+        out.put(NEWLINE);
+        _column = 0;
+    }
+
+    /** Start a new line without writing anything. */
+    void reset() {
+        _column = 0;
+    }
+
+    /** Separator of groups. */
+    private static final byte SPACE = ' ';
+
+    /** Terminator of lines. */
+    private static final byte NEWLINE = '\n';
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Bytes of each letter, by alphabet index. */
+    private final byte[][] _letters;
+
+    /** The only byte of each letter, if every letter is one byte, or
+     *  null. */
+    private byte[] _single;
+
+    /** Value of maxBytes(). */
+    private int _maxBytes;
+
+    /** Number of letters written on the current line. */
+    private int _column;
+
+}
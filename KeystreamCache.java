@@ -0,0 +1,338 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of keystream tables, for keys that encrypt many messages.
+ *
+ *  With its rotors, plugboard and starting settings fixed, a machine
+ *  passes through the same sequence of rotor states whenever it is
+ *  started again, and that sequence is eventually periodic (for three
+ *  moving rotors of 26 letters, with double stepping, the period is
+ *  16,900).  A Keystream holds the whole-machine permutation of every
+ *  state in that sequence up to the end of its first period, one byte
+ *  per entry, so converting a character is a single lookup however
+ *  the message is split up.
+ *
+ *  Tables are keyed by the wiring, notches, plugboard and settings
+ *  they were built from, and are evicted least recently used first to
+ *  keep the memory they take within a budget.  Alphabets of more than
+ *  EncodedText.MAX_SYMBOLS characters, and keys whose table alone would
+ *  exceed the budget, are not cached.  A cache may be shared between
+ *  threads.
+ *  @author Nhu Vu
+ */
+final class KeystreamCache {
+
+    /** Default memory budget, in bytes. */
+    static final long DEFAULT_BUDGET = 1L << 26;
+
+    /** A cache keeping at most BUDGET bytes of tables. */
+    KeystreamCache(long budget) {
+        _budget = budget;
+    }
+
+    /** A cache with the default budget. */
+    KeystreamCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /** Return the keystream of MACHINE from its current settings, or
+     *  null if it cannot be cached. */
+    Keystream get(Machine machine) {
+        return get(new MachineSpec(machine), new MachineState(machine));
+    }
+
+    /** Return the keystream of SPEC from the settings in START, or null
+     *  if it cannot be cached. */
+    Keystream get(MachineSpec spec, MachineState start) {
+        if (!EncodedText.fits(spec.alphabet())) {
+            return null;
+        }
+        Key key = new Key(spec, start);
+        synchronized (this) {
+            Keystream result = _tables.get(key);
+            if (result != null) {
+                _hits += 1;
+                return result;
+            }
+            _misses += 1;
+        }
+        Keystream result = Keystream.build(spec, start, _budget);
+        if (result != null) {
+            add(key, result);
+        }
+        return result;
+    }
+
+    /** Add TABLE under KEY, evicting the least recently used tables
+     *  until I am within my budget again. */
+    private synchronized void add(Key key, Keystream table) {
+        Keystream old = _tables.put(key, table);
+        _used += key.bytes() + table.bytes();
+        if (old != null) {
+            _used -= key.bytes() + old.bytes();
+        }
+        Iterator<Map.Entry<Key, Keystream>> entries =
+            _tables.entrySet().iterator();
+        while (_used > _budget && entries.hasNext()) {
+            Map.Entry<Key, Keystream> entry = entries.next();
+            _used -= entry.getKey().bytes() + entry.getValue().bytes();
+            entries.remove();
+        }
+    }
+
+    /** Return the number of tables I hold. */
+    synchronized int size() {
+        return _tables.size();
+    }
+
+    /** Return the approximate number of bytes my tables take. */
+    synchronized long used() {
+        return _used;
+    }
+
+    /** Return the number of lookups that found a cached table. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that did not. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** The table of whole-machine permutations for one key.  Row K is
+     *  the permutation applied to character K of a message, up to the
+     *  end of the first period; later characters reuse the rows of the
+     *  period. */
+    static final class Keystream {
+
+        /** A keystream of ROWS rows of SIZE entries in TABLE, of which
+         *  the first PREFIX rows precede the period. */
+        private Keystream(byte[] table, int size, int prefix, int rows) {
+            _table = table;
+            _size = size;
+            _prefix = prefix;
+            _rows = rows;
+        }
+
+        /** Return the keystream of SPEC from START, or null if its table
+         *  would take more than BUDGET bytes. */
+        static Keystream build(MachineSpec spec, MachineState start,
+                               long budget) {
+            int size = spec.alphabet().size();
+            long maxRows = Math.min(budget / size, Integer.MAX_VALUE / size);
+            MachineState first = start.copy();
+            spec.step(first);
+            int period = period(spec, first, maxRows);
+            if (period < 0 || period > maxRows) {
+                return null;
+            }
+            MachineState tortoise = first.copy(), hare = first.copy();
+            for (int k = 0; k < period; k++) {
+                spec.step(hare);
+            }
+            int prefix = 0;
+            while (!Arrays.equals(tortoise.positions(), hare.positions())) {
+                if (prefix + (long) period >= maxRows) {
+                    return null;
+                }
+                spec.step(tortoise);
+                spec.step(hare);
+                prefix += 1;
+            }
+            int rows = prefix + period;
+            byte[] table = new byte[rows * size];
+            int[] plugboard = spec.plugboardTable();
+            MachineState state = first;
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < size; c++) {
+                    table[r * size + c] = (byte)
+                        plugboard[spec.scramble(state, plugboard[c])];
+                }
+                spec.step(state);
+            }
+            return new Keystream(table, size, prefix, rows);
+        }
+
+        /** Return the length of the cycle of states that stepping
+         *  SPEC from START eventually enters, found by Brent's method,
+         *  or -1 if it is longer than MAXROWS. */
+        private static int period(MachineSpec spec, MachineState start,
+                                  long maxRows) {
+            MachineState tortoise = start.copy(), hare = start.copy();
+            spec.step(hare);
+            long power = 1, length = 1;
+            while (!Arrays.equals(tortoise.positions(), hare.positions())) {
+                if (power == length) {
+                    if (power > maxRows) {
+                        return -1;
+                    }
+                    tortoise = hare.copy();
+                    power *= 2;
+                    length = 0;
+                }
+                spec.step(hare);
+                length += 1;
+            }
+            return (int) length;
+        }
+
+        /** Return the number of rows before the period starts. */
+        int prefix() {
+            return _prefix;
+        }
+
+        /** Return the length of the period, in characters. */
+        int period() {
+            return _rows - _prefix;
+        }
+
+        /** Return the approximate number of bytes I take. */
+        long bytes() {
+            return _table.length + OVERHEAD;
+        }
+
+        /** Return the row used for character N of a message. */
+        int row(long n) {
+            return n < _rows ? (int) n
+                : _prefix + (int) ((n - _prefix) % period());
+        }
+
+        /** Return the conversion of C (an alphabet index) as character
+         *  N of a message. */
+        int convert(long n, int c) {
+            return _table[row(n) * _size + c] & BYTE_MASK;
+        }
+
+        /** Return a cursor converting a message from its start. */
+        Cursor cursor() {
+            return new Cursor(this);
+        }
+
+        /** Permutation of each row, one byte per character. */
+        private final byte[] _table;
+        /** Alphabet size. */
+        private final int _size;
+        /** Number of rows before the period. */
+        private final int _prefix;
+        /** Number of rows. */
+        private final int _rows;
+    }
+
+    /** A position in a Keystream, converting successive characters of
+     *  one message.  Not thread-safe; each message has its own. */
+    static final class Cursor {
+
+        /** A cursor at the start of KEYS. */
+        private Cursor(Keystream keys) {
+            _keys = keys;
+        }
+
+        /** Convert the LEN characters of TEXT starting at K in place as
+         *  the next characters of my message. */
+        void convert(EncodedText text, int k, int len) {
+            if (text.alphabet().size() != _keys._size) {
+                throw error("Text is in a different alphabet.");
+            }
+            byte[] bytes = text.bytes(), table = _keys._table;
+            int size = _keys._size, rows = _keys._rows, row = _row;
+            for (int i = k; i < k + len; i++) {
+                bytes[i] = table[row * size + (bytes[i] & BYTE_MASK)];
+                row += 1;
+                if (row == rows) {
+                    row = _keys._prefix;
+                }
+            }
+            _row = row;
+        }
+
+        /** The keystream I convert with. */
+        private final Keystream _keys;
+        /** Row of my next character. */
+        private int _row;
+    }
+
+    /** The wiring, notches, plugboard and settings a table was built
+     *  from, flattened into an array. */
+    private static final class Key {
+
+        /** The key of SPEC started at START. */
+        Key(MachineSpec spec, MachineState start) {
+            int size = spec.alphabet().size(), n = spec.numRotors();
+            _data = new int[KEY_HEADER + n * (2 * size + 1) + size];
+            int k = 0;
+            _data[k++] = size;
+            _data[k++] = n;
+            _data[k++] = spec.numPawls();
+            for (int slot = 0; slot < n; slot++) {
+                System.arraycopy(spec.forwardTable(slot), 0, _data, k, size);
+                k += size;
+                for (int p = 0; p < size; p++) {
+                    _data[k++] = spec.atNotch(slot, p) ? 1 : 0;
+                }
+                _data[k++] = start.position(slot);
+            }
+            System.arraycopy(spec.plugboardTable(), 0, _data, k, size);
+            _hash = Arrays.hashCode(_data);
+        }
+
+        /** Return the approximate number of bytes I take. */
+        long bytes() {
+            return (long) Integer.BYTES * _data.length + OVERHEAD;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj)._hash == _hash
+                && Arrays.equals(((Key) obj)._data, _data);
+        }
+
+        @Override
+        public int hashCode() {
+            return _hash;
+        }
+
+        /** Flattened description. */
+        private final int[] _data;
+        /** Hash of _data. */
+        private final int _hash;
+    }
+
+    /** Mask extracting an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** Number of leading entries of a Key holding its dimensions. */
+    private static final int KEY_HEADER = 3;
+
+    /** Allowance for object headers and fields in memory estimates. */
+    private static final int OVERHEAD = 64;
+
+    /** Initial capacity of the table map. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Load factor of the table map. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Memory budget, in bytes. */
+    private final long _budget;
+
+    /** Tables by key, least recently used first. */
+    private final LinkedHashMap<Key, Keystream> _tables =
+        new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+
+    /** Approximate bytes taken by _tables. */
+    private long _used;
+
+    /** Number of lookups that found a table. */
+    private long _hits;
+
+    /** Number of lookups that did not. */
+    private long _misses;
+
+}
@@ -0,0 +1,98 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Nhu Vu
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Period of sampleMachine's rotor states: 26 * 25 * 26, the middle
+     *  rotor's double step costing it one setting per revolution. */
+    private static final int PERIOD = 16900;
+
+    /** Bytes of one cached table for sampleMachine, roughly. */
+    private static final long TABLE_BYTES = (long) PERIOD * 26;
+
+    @Test
+    public void testMatchesMachine() {
+        KeystreamCache cache = new KeystreamCache();
+        KeystreamCache.Keystream keys =
+            cache.get(MachineTest.sampleMachine());
+        assertEquals(PERIOD, keys.period());
+        String msg = MachineTest.randomMessage(3 * PERIOD + 123);
+        EncodedText text = EncodedText.encode(UPPER, msg);
+        KeystreamCache.Cursor cursor = keys.cursor();
+        for (int k = 0; k < msg.length(); k += 1000) {
+            cursor.convert(text, k, Math.min(1000, msg.length() - k));
+        }
+        assertEquals(MachineTest.sampleMachine().convert(msg),
+                     text.toString());
+        assertEquals(UPPER.toInt(MachineTest.CIPHER.charAt(3)),
+                     keys.convert(3 + PERIOD,
+                                  UPPER.toInt(MachineTest.PLAIN.charAt(3))));
+    }
+
+    /** Starting with both the middle and right rotors at their notches
+     *  steps into a state off the cycle, so the table has a row before
+     *  the period. */
+    @Test
+    public void testPrefix() {
+        Machine machine = MachineTest.sampleMachine();
+        machine.setRotors("AXJQ");
+        KeystreamCache.Keystream keys = new KeystreamCache().get(machine);
+        String msg = MachineTest.randomMessage(2 * PERIOD);
+        EncodedText text = EncodedText.encode(UPPER, msg);
+        keys.cursor().convert(text, 0, msg.length());
+        assertEquals(machine.convert(msg), text.toString());
+        assertEquals(1, keys.prefix());
+        assertEquals(PERIOD, keys.period());
+    }
+
+    @Test
+    public void testHits() {
+        KeystreamCache cache = new KeystreamCache();
+        KeystreamCache.Keystream keys =
+            cache.get(MachineTest.sampleMachine());
+        assertSame(keys, cache.get(MachineTest.sampleMachine()));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        Machine other = MachineTest.sampleMachine();
+        other.setRotors("AXLF");
+        assertNotSame(keys, cache.get(other));
+        assertEquals(2, cache.size());
+        assertTrue(cache.used() > 2 * TABLE_BYTES);
+    }
+
+    @Test
+    public void testEviction() {
+        KeystreamCache cache = new KeystreamCache(TABLE_BYTES * 3 / 2);
+        Machine first = MachineTest.sampleMachine();
+        Machine second = MachineTest.sampleMachine();
+        second.setRotors("AXLF");
+        KeystreamCache.Keystream keys = cache.get(first);
+        cache.get(second);
+        assertEquals(1, cache.size());
+        assertTrue(cache.used() <= TABLE_BYTES * 3 / 2);
+        assertNotSame(keys, cache.get(first));
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testTooLarge() {
+        KeystreamCache cache = new KeystreamCache(TABLE_BYTES / 2);
+        assertNull(cache.get(MachineTest.sampleMachine()));
+        assertEquals(0, cache.size());
+        assertNull(new KeystreamCache().get(MachineTest.largeMachine()));
+    }
+
+}
@@ -0,0 +1,152 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An engine that runs many sessions of one machine side by side.  Each
+ *  lane holds its own rotor settings, and a step converts one character
+ *  in every lane.  Settings are kept in structure-of-arrays form, one
+ *  array of lane settings per slot, so that the lanes' independent
+ *  chains of table lookups can overlap, either in the scalar loop over
+ *  lanes here or in SIMD registers in VectorLanes.  Text is interleaved
+ *  the same way: character T of lane K is element T * lanes() + K.
+ *  @author Nhu Vu
+ */
+abstract class LaneEngine {
+
+    /** An engine of LANES lanes converting as SPEC does, each lane at
+     *  setting 0 in every slot. */
+    LaneEngine(MachineSpec spec, int lanes) {
+        if (lanes <= 0) {
+            throw error("Must have at least one lane.");
+        }
+        _lanes = lanes;
+        _size = spec.alphabet().size();
+        _numRotors = spec.numRotors();
+        _first = _numRotors - spec.numPawls();
+        _positions = new int[_numRotors][lanes];
+        _forward = new int[_numRotors][];
+        _backward = new int[_numRotors][];
+        _notches = new int[_numRotors][];
+        _next = new int[_numRotors][];
+        for (int i = 0; i < _numRotors; i++) {
+            _forward[i] = spec.forwardTable(i);
+            _backward[i] = spec.backwardTable(i);
+            _notches[i] = spec.notchTable(i);
+            _next[i] = spec.nextTable(i);
+        }
+        _plugboard = spec.plugboardTable();
+    }
+
+    /** Return an engine of LANES lanes converting as SPEC does, using
+     *  SIMD instructions if the Vector API is available and not turned
+     *  off by setting the system property VECTOR_PROPERTY to false. */
+    static LaneEngine create(MachineSpec spec, int lanes) {
+        if (vectorAvailable()) {
+            return new VectorLanes(spec, lanes);
+        }
+        return new ScalarLanes(spec, lanes);
+    }
+
+    /** Return true iff create would use the Vector API. */
+    static boolean vectorAvailable() {
+        return Boolean.parseBoolean(System.getProperty(VECTOR_PROPERTY,
+                                                       "true"))
+            && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    /** Return my number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Set the rotor settings of lane LANE to those of STATE. */
+    void setState(int lane, MachineState state) {
+        if (state.numRotors() != _numRotors) {
+            throw error("State has the wrong number of rotors.");
+        }
+        for (int i = 0; i < _numRotors; i++) {
+            _positions[i][lane] = state.position(i);
+        }
+    }
+
+    /** Return the rotor settings of lane LANE. */
+    MachineState state(int lane) {
+        int[] result = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i++) {
+            result[i] = _positions[i][lane];
+        }
+        return new MachineState(result);
+    }
+
+    /** Convert the first LEN characters of every lane of TEXT, which
+     *  holds alphabet indices interleaved by lane, in place, advancing
+     *  every lane LEN steps. */
+    abstract void convert(int[] text, int len);
+
+    /** Step lanes FROM..TO-1 and convert their characters at TEXT[BASE +
+     *  lane], one lane at a time. */
+    void convertScalar(int[] text, int base, int from, int to) {
+        int last = _numRotors - 1;
+        for (int k = from; k < to; k++) {
+            for (int i = _first; i < last; i++) {
+                int carry = _notches[i + 1][_positions[i + 1][k]];
+                _positions[i][k] = _next[i][2 * _positions[i][k] + carry];
+            }
+            _positions[last][k] = _next[last][2 * _positions[last][k]];
+            int p = _plugboard[text[base + k]];
+            for (int i = last; i >= 0; i--) {
+                p = shift(_forward[i], p, _positions[i][k]);
+            }
+            for (int i = 1; i <= last; i++) {
+                p = shift(_backward[i], p, _positions[i][k]);
+            }
+            text[base + k] = _plugboard[p];
+        }
+    }
+
+    /** Return the conversion of contact P by a rotor at setting POSN
+     *  whose doubled wiring table is TABLE. */
+    private int shift(int[] table, int p, int posn) {
+        int result = table[p + posn] - posn;
+        return result < 0 ? result + _size : result;
+    }
+
+    /** System property that, when false, stops create from using the
+     *  Vector API. */
+    static final String VECTOR_PROPERTY = "enigma.vector";
+
+    /** Name of the module providing the Vector API. */
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** Number of lanes. */
+    final int _lanes;
+
+    /** Size of the alphabet. */
+    final int _size;
+
+    /** Number of rotor slots. */
+    final int _numRotors;
+
+    /** First slot with a pawl. */
+    final int _first;
+
+    /** Setting of each slot in each lane, indexed by slot, then lane. */
+    final int[][] _positions;
+
+    /** Doubled wiring table of each slot. */
+    final int[][] _forward;
+
+    /** Doubled inverse wiring table of each slot. */
+    final int[][] _backward;
+
+    /** 1 at each notch of each slot and 0 elsewhere. */
+    final int[][] _notches;
+
+    /** Stepping table of each slot, as given by MachineSpec.nextTable,
+     *  so that every engine steps by the rule Machine follows. */
+    final int[][] _next;
+
+    /** Plugboard mapping. */
+    final int[] _plugboard;
+
+}
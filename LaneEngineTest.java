@@ -0,0 +1,102 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the LaneEngine classes.
+ *  @author Nhu Vu
+ */
+public class LaneEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Number of lanes tested: deliberately not a multiple of any vector
+     *  length, so that the scalar tail is exercised too. */
+    private static final int LANES = 37;
+
+    /** Characters converted in each lane. */
+    private static final int LENGTH = 700;
+
+    /** Check that ENGINE, whose lanes are started at random settings,
+     *  converts random text exactly as SPEC does with one state per
+     *  lane. */
+    private void checkEngine(MachineSpec spec, LaneEngine engine) {
+        int lanes = engine.lanes();
+        Random random = new Random(lanes);
+        MachineState[] states = new MachineState[lanes];
+        for (int k = 0; k < lanes; k++) {
+            int[] posns = new int[spec.numRotors()];
+            for (int i = 1; i < posns.length; i++) {
+                posns[i] = random.nextInt(UPPER.size());
+            }
+            states[k] = new MachineState(posns);
+            engine.setState(k, states[k]);
+        }
+        int[] text = new int[LENGTH * lanes];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = random.nextInt(UPPER.size());
+        }
+        int[] expected = text.clone();
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = spec.convert(states[i % lanes], expected[i]);
+        }
+        engine.convert(text, LENGTH);
+        assertArrayEquals(expected, text);
+        for (int k = 0; k < lanes; k++) {
+            assertArrayEquals(states[k].positions(),
+                              engine.state(k).positions());
+        }
+    }
+
+    @Test
+    public void testScalarLanes() {
+        MachineSpec spec = new MachineSpec(MachineTest.sampleMachine());
+        checkEngine(spec, new ScalarLanes(spec, LANES));
+    }
+
+    @Test
+    public void testVectorLanes() {
+        assumeTrue(LaneEngine.vectorAvailable());
+        MachineSpec spec = new MachineSpec(MachineTest.sampleMachine());
+        checkEngine(spec, new VectorLanes(spec, LANES));
+        checkEngine(spec, new VectorLanes(spec, 1));
+    }
+
+    @Test
+    public void testCreate() {
+        MachineSpec spec = new MachineSpec(MachineTest.sampleMachine());
+        LaneEngine engine = LaneEngine.create(spec, LANES);
+        assertEquals(LANES, engine.lanes());
+        assertEquals(LaneEngine.vectorAvailable(),
+                     engine instanceof VectorLanes);
+        checkEngine(spec, engine);
+    }
+
+    @Test
+    public void testSample() {
+        MachineSpec spec = new MachineSpec(MachineTest.sampleMachine());
+        LaneEngine engine = LaneEngine.create(spec, 2);
+        engine.setState(0, spec.newState("AXLE"));
+        engine.setState(1, spec.newState("AXLE"));
+        String cipher = MachineTest.CIPHER, plain = MachineTest.PLAIN;
+        int[] text = new int[2 * cipher.length()];
+        for (int t = 0; t < cipher.length(); t++) {
+            text[2 * t] = UPPER.toInt(cipher.charAt(t));
+            text[2 * t + 1] = UPPER.toInt(plain.charAt(t));
+        }
+        engine.convert(text, cipher.length());
+        for (int t = 0; t < cipher.length(); t++) {
+            assertEquals(plain.charAt(t), UPPER.toChar(text[2 * t]));
+            assertEquals(cipher.charAt(t), UPPER.toChar(text[2 * t + 1]));
+        }
+    }
+}
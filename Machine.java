@@ -1,7 +1,10 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import static enigma.EnigmaException.*;
 
@@ -15,12 +18,85 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorLibrary(alpha, allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, taking its rotors from LIBRARY,
+     *  which may be shared with other machines. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorLibrary library) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _rotors = new Rotor[numRotors()];
-        _allRotors = new ArrayList<Rotor>();
-        _allRotors.addAll(0, allRotors);
+        _library = library;
+    }
+
+    /** Return a new machine with my alphabet, available and inserted
+     *  rotors, rotor settings and plugboard, sharing no mutable state
+     *  with me, so that it may be used in another thread. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, numRotors(), numPawls(),
+                                     _library);
+        for (int i = 0; i < numRotors(); i++) {
+            if (_rotors[i] != null) {
+                result._rotors[i] = _rotors[i].copy();
+            }
+        }
+        result._plugboard = _plugboard;
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return all the rotors available to me, in the order given to my
+     *  constructor.  Any not yet read from my library are read. */
+    List<Rotor> availableRotors() {
+        return _library.rotors();
+    }
+
+    /** Return the library my rotors come from. */
+    RotorLibrary library() {
+        return _library;
+    }
+
+    /** Return the names of every admissible assignment of my available
+     *  rotors to my slots: a reflector in slot 0, non-moving rotors in
+     *  the slots without pawls and moving rotors in the rest, with no
+     *  rotor used twice. */
+    List<String[]> rotorOrders() {
+        ArrayList<String[]> result = new ArrayList<>();
+        addRotorOrders(new String[numRotors()], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT every admissible completion of ROTORS, whose first
+     *  SLOT entries are already chosen. */
+    private void addRotorOrders(String[] rotors, int slot,
+                                List<String[]> result) {
+        if (slot == numRotors()) {
+            result.add(rotors.clone());
+            return;
+        }
+        for (Rotor rotor : availableRotors()) {
+            boolean fits;
+            if (slot == 0) {
+                fits = rotor.reflecting();
+            } else if (slot < numRotors() - numPawls()) {
+                fits = !rotor.reflecting() && !rotor.rotates();
+            } else {
+                fits = rotor.rotates();
+            }
+            if (fits && !Arrays.asList(rotors).subList(0, slot)
+                .contains(rotor.name())) {
+                rotors[slot] = rotor.name();
+                addRotorOrders(rotors, slot + 1, result);
+            }
+        }
+        rotors[slot] = null;
     }
 
     /** Return the number of rotor slots I have. */
@@ -35,35 +111,59 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  Each slot gets
+     *  its own copy of the rotor, so machines sharing a collection of
+     *  available rotors do not disturb each other's settings. */
     void insertRotors(String[] rotors) {
         if (rotors.length != numRotors()) {
             throw error("Wrong number of rotors.");
         }
+        _cycle = null;
         for (int i = 0; i < rotors.length; i++) {
-            for (int j = 0; j < _allRotors.size(); j++) {
-                if (rotors[i].equals(_allRotors.get(j).name())) {
-                    _rotors[i] = _allRotors.get(j);
-                } else {
-                    continue;
-                }
+            Rotor rotor = _library.get(rotors[i]);
+            if (rotor == null) {
+                _rotors[i] = null;
+                throw error("No rotor named %s.", rotors[i]);
+            }
+            _rotors[i] = rotor.copy();
+            _rotors[i].set(0);
+        }
+        if (!_rotors[0].reflecting()) {
+            throw error("First rotor must be a reflector.");
+        }
+        for (int i = 1; i < rotors.length; i++) {
+            if (_rotors[i].rotates() != (i >= numRotors() - numPawls())) {
+                throw error("Rotor %s is in the wrong slot.", rotors[i]);
             }
         }
-
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        int[] posns = setting.codePoints().toArray();
+        if (posns.length != numRotors() - 1) {
+            throw error("Setting must have %d characters.", numRotors() - 1);
+        }
         for (int index = 1; index < _rotors.length; index++) {
-            if (!_alphabet.contains(setting.charAt(index - 1))) {
+            if (!_alphabet.containsCodePoint(posns[index - 1])) {
                 throw error("Invalid setting!");
             }
-            _rotors[index].set(setting.charAt(index - 1));
+            _rotors[index].set(_alphabet.toIndex(posns[index - 1]));
         }
     }
 
+    /** Return the rotor in slot SLOT (0 for the reflector). */
+    Rotor rotor(int slot) {
+        return _rotors[slot];
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard =  plugboard;
@@ -74,17 +174,7 @@ class Machine {
      *  the machine. */
     int convert(int c) {
         int permuted = _plugboard.permute(c);
-        boolean moveable = _rotors[numRotors() - 1].atNotch();
-        boolean moved = true;
-        _rotors[numRotors() - 1].advance();
-        for (int i = numRotors() - 2; i >= 0; i--) {
-            if (moveable && moved) {
-                moveable = _rotors[i].atNotch();
-                _rotors[i].advance();
-            } else {
-                moved = false;
-            }
-        }
+        advanceRotors();
         for (int index = numRotors() - 1; index >= 0; index--) {
             permuted = _rotors[index].convertForward(permuted);
         }
@@ -95,27 +185,276 @@ class Machine {
         return permuted;
     }
 
+    /** Return the permutation of my alphabet that the plugboard and
+     *  rotors apply at their current settings, which convert(int)
+     *  applies to a character just after advancing the rotors.  It is
+     *  an involution, and a derangement unless the plugboard or
+     *  reflector has a fixed point, so a run of characters converted at
+     *  one rotor state, or a state that recurs, needs only lookups in
+     *  it. */
+    Permutation permutation() {
+        int[] table = new int[_alphabet.size()];
+        for (int c = 0; c < table.length; c++) {
+            int permuted = _plugboard.permute(c);
+            for (int index = numRotors() - 1; index >= 0; index--) {
+                permuted = _rotors[index].convertForward(permuted);
+            }
+            for (int index = 1; index < numRotors(); index++) {
+                permuted = _rotors[index].convertBackward(permuted);
+            }
+            table[c] = _plugboard.permute(permuted);
+        }
+        return new Permutation(table, _alphabet);
+    }
+
+    /** Advance my rotors for one keypress, by the rule stated in
+     *  MachineSpec.advances. */
+    private void advanceRotors() {
+        int last = numRotors() - 1;
+        for (int i = numRotors() - numPawls(); i <= last; i++) {
+            if (MachineSpec.advances(i, numRotors(), numPawls(),
+                                     i < last && _rotors[i + 1].atNotch(),
+                                     _rotors[i].atNotch())) {
+                _rotors[i].advance();
+            }
+        }
+    }
+
+    /** Return the settings of all my rotor slots (0 for the reflector)
+     *  as they would be after N further keypresses, without changing
+     *  my state.  When no driving rotor has notches at consecutive
+     *  settings, this takes time independent of N; otherwise it takes
+     *  time at most proportional to the period of my settings. */
+    int[] stateAt(long n) {
+        if (n < 0) {
+            throw error("Cannot seek backwards.");
+        }
+        int[] result = new int[numRotors()];
+        for (int i = 0; i < numRotors(); i++) {
+            result[i] = _rotors[i].setting();
+        }
+        if (!closedFormStepping()) {
+            long steps = reducedSteps(result, n);
+            boolean[] notch = new boolean[numRotors()];
+            for (long k = 0; k < steps; k++) {
+                stepSettings(result, notch);
+            }
+            return result;
+        }
+        for (int j = 0; j < numPawls(); j++) {
+            MovingRotor rotor = pawlRotor(j);
+            result[numRotors() - 1 - j] =
+                (int) ((rotor.setting() + advances(j, n)) % rotor.size());
+        }
+        return result;
+    }
+
+    /** Set my rotors to the state they would reach after N further
+     *  keypresses. */
+    void seek(long n) {
+        int[] settings = stateAt(n);
+        for (int i = 1; i < numRotors(); i++) {
+            _rotors[i].set(settings[i]);
+        }
+    }
+
+    /** Return the rotor with the J-th pawl, counting from the right. */
+    private MovingRotor pawlRotor(int j) {
+        return (MovingRotor) _rotors[numRotors() - 1 - j];
+    }
+
+    /** Return true iff stateAt may use the closed form in advances, which
+     *  holds when no rotor that drives another has notches at consecutive
+     *  settings (so no two carries can coincide with a double step). */
+    private boolean closedFormStepping() {
+        for (int j = 0; j < numPawls() - 1; j++) {
+            if (pawlRotor(j).adjacentNotches()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of times the rotor with the J-th pawl from the
+     *  right advances during the next T keypresses.  Rotor J-1 carries
+     *  into rotor J once for each keypress at which it sits at a notch.
+     *  Unless J is the leftmost pawl, rotor J also double-steps off each
+     *  notch it lands on, one keypress later, so each carry moves it off
+     *  one non-notch setting. */
+    private long advances(int j, long t) {
+        if (t <= 0) {
+            return 0;
+        } else if (j == 0) {
+            return t;
+        }
+        MovingRotor driver = pawlRotor(j - 1), rotor = pawlRotor(j);
+        long carries = driver.notchCount(driver.setting(), advances(j - 1, t));
+        if (j == numPawls() - 1) {
+            return carries;
+        }
+        if (rotor.atNotch() && driver.atNotch()) {
+            carries -= 1;
+        }
+        long steps = rotor.stepsPastNotches(rotor.setting(), carries);
+        if (rotor.atNotch((int) ((rotor.setting() + steps) % rotor.size()))) {
+            long last = (driver.setting() + advances(j - 1, t - 1))
+                % driver.size();
+            if (carries == 0 || !driver.atNotch((int) last)) {
+                steps += 1;
+            }
+        }
+        return steps;
+    }
+
+    /** Return a number of keypresses no greater than N that takes my
+     *  rotors from the settings START to the same settings as N
+     *  keypresses do.  The sequence of settings from START is eventually
+     *  periodic, so beyond its prefix N is reduced modulo its period.
+     *  The prefix and period are found by Brent's method, and kept for
+     *  later calls from the same START until my rotors change.  They are
+     *  published together as one Cycle, so calls from other threads see
+     *  either no cycle or a whole one. */
+    private long reducedSteps(int[] start, long n) {
+        Cycle cycle = _cycle;
+        if (cycle == null || !Arrays.equals(start, cycle._start)) {
+            boolean[] notch = new boolean[numRotors()];
+            int[] tortoise = start.clone(), hare = start.clone();
+            stepSettings(hare, notch);
+            long power = 1, period = 1;
+            while (!Arrays.equals(tortoise, hare)) {
+                if (power == period) {
+                    System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                    power *= 2;
+                    period = 0;
+                }
+                stepSettings(hare, notch);
+                period += 1;
+            }
+            tortoise = start.clone();
+            hare = start.clone();
+            for (long k = 0; k < period; k++) {
+                stepSettings(hare, notch);
+            }
+            long prefix = 0;
+            while (!Arrays.equals(tortoise, hare)) {
+                stepSettings(tortoise, notch);
+                stepSettings(hare, notch);
+                prefix += 1;
+            }
+            cycle = new Cycle(start.clone(), prefix, period);
+            _cycle = cycle;
+        }
+        if (n <= cycle._prefix) {
+            return n;
+        }
+        return cycle._prefix + (n - cycle._prefix) % cycle._period;
+    }
+
+    /** Advance SETTINGS, the settings of all my rotor slots, for one
+     *  keypress, as advanceRotors does for the rotors themselves.
+     *  NOTCH is scratch space of numRotors() entries. */
+    private void stepSettings(int[] settings, boolean[] notch) {
+        int first = numRotors() - numPawls(), last = numRotors() - 1;
+        for (int i = first; i <= last; i++) {
+            notch[i] = _rotors[i].rotates()
+                && ((MovingRotor) _rotors[i]).atNotch(settings[i]);
+        }
+        for (int i = first; i <= last; i++) {
+            if (MachineSpec.advances(i, numRotors(), numPawls(),
+                                     i < last && notch[i + 1], notch[i])) {
+                settings[i] = (settings[i] + 1) % _rotors[i].size();
+            }
+        }
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
+     *  the rotors accordingly.  MSG may contain supplementary characters
+     *  if my alphabet does. */
     String convert(String msg) {
-        int conversion;
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            conversion = convert(_alphabet.toInt(msg.charAt(i)));
-            char convertStr = _alphabet.toChar(conversion);
-            result += Character.toString(convertStr);
+        if (!_alphabet.bmp()) {
+            StringBuilder result = new StringBuilder(msg.length());
+            msg.codePoints().forEach(cp -> result.appendCodePoint(
+                _alphabet.toCodePoint(convert(_alphabet.toIndex(cp)))));
+            return result.toString();
+        }
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer, 0, buffer.length);
+        return new String(buffer);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF, storing the
+     *  results in DST starting at DSTOFF and updating the state of the
+     *  rotors accordingly.  SRC and DST may be the same array. */
+    void convert(char[] src, int srcOff, char[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            int c = convert(_alphabet.toInt(src[srcOff + i]));
+            dst[dstOff + i] = _alphabet.toChar(c);
         }
-        return result;
     }
 
+    /** Convert the LEN bytes of SRC starting at SRCOFF, storing the
+     *  results in DST starting at DSTOFF and updating the state of the
+     *  rotors accordingly.  Each byte is taken as a character in the
+     *  range 0-255 (ISO-8859-1), so my alphabet must lie in that range.
+     *  SRC and DST may be the same array. */
+    void convert(byte[] src, int srcOff, byte[] dst, int dstOff, int len) {
+        if (_alphabet.maxCodePoint() > BYTE_MASK) {
+            throw error("Alphabet has characters that are not single bytes.");
+        }
+        for (int i = 0; i < len; i++) {
+            char ch = (char) (src[srcOff + i] & BYTE_MASK);
+            int c = convert(_alphabet.toInt(ch));
+            dst[dstOff + i] = (byte) _alphabet.toChar(c);
+        }
+    }
+
+    /** Convert the remaining characters of SRC into DST, stopping when
+     *  either runs out, and advance both positions past the characters
+     *  handled.  Returns the number of characters converted. */
+    int convert(CharBuffer src, CharBuffer dst) {
+        int len = Math.min(src.remaining(), dst.remaining());
+        if (src.hasArray() && dst.hasArray() && !dst.isReadOnly()) {
+            convert(src.array(), src.arrayOffset() + src.position(),
+                    dst.array(), dst.arrayOffset() + dst.position(), len);
+            src.position(src.position() + len);
+            dst.position(dst.position() + len);
+        } else {
+            for (int i = 0; i < len; i++) {
+                int c = convert(_alphabet.toInt(src.get()));
+                dst.put(_alphabet.toChar(c));
+            }
+        }
+        return len;
+    }
+
+    /** Convert the LEN characters of TEXT starting at K in place.
+     *  TEXT's alphabet must be the size of mine. */
+    void convert(EncodedText text, int k, int len) {
+        if (text.alphabet().size() != _alphabet.size()) {
+            throw error("Text is in a different alphabet.");
+        }
+        byte[] bytes = text.bytes();
+        for (int i = k; i < k + len; i++) {
+            bytes[i] = (byte) convert(bytes[i] & BYTE_MASK);
+        }
+    }
+
+    /** Convert all of TEXT in place, as for convert(TEXT, 0, length). */
+    void convert(EncodedText text) {
+        convert(text, 0, text.length());
+    }
+
+    /** Mask selecting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xff;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
     /** Number of rotor slots. */
     private final int _numRotors;
 
-    /** Collection of all rotors. */
-    private ArrayList<Rotor> _allRotors;
+    /** Library of all available rotors. */
+    private final RotorLibrary _library;
 
     /** Number of pawls. */
     private final int _pawls;
@@ -126,4 +465,27 @@ class Machine {
     /** Arraylist containing rotors that will be used. */
     private Rotor[] _rotors;
 
+    /** The eventual cycle of my settings found by reducedSteps, or
+     *  null. */
+    private volatile Cycle _cycle;
+
+    /** The prefix and period of the settings reached from one start. */
+    private static final class Cycle {
+        /** The settings from START, which repeat after PREFIX
+         *  keypresses with period PERIOD. */
+        Cycle(int[] start, long prefix, long period) {
+            _start = start;
+            _prefix = prefix;
+            _period = period;
+        }
+
+        /** Settings from which the cycle was found. */
+        private final int[] _start;
+        /** Number of keypresses from _start before its settings
+         *  repeat. */
+        private final long _prefix;
+        /** Period of the settings from _start once they repeat. */
+        private final long _period;
+    }
+
 }
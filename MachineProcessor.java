@@ -0,0 +1,289 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A Flow.Processor that converts a stream of text chunks with a
+ *  machine.  Each CharBuffer received (from its position to its limit)
+ *  is converted into one or more output buffers of at most a fixed
+ *  capacity, which are published in order.
+ *
+ *  Demand is passed upstream one chunk at a time, and only once the
+ *  output of the previous chunk has all been requested, so at most one
+ *  input chunk's worth of output is ever held here; a slow subscriber
+ *  slows the publisher instead of filling memory.  Output buffers come
+ *  from a small pool: a subscriber that is finished with a buffer may
+ *  hand it back with recycle, and then steady-state conversion
+ *  allocates nothing.
+ *
+ *  The machine is used by whichever thread delivers onNext, so it must
+ *  not be used elsewhere while the processor is active.
+ *  @author Nhu Vu
+ */
+class MachineProcessor implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** Default capacity of output buffers, in characters. */
+    static final int DEFAULT_CAPACITY = 1 << 13;
+
+    /** Default number of free output buffers kept. */
+    static final int DEFAULT_POOL = 4;
+
+    /** A processor converting with MACHINE into output buffers of
+     *  CAPACITY characters, keeping up to POOL free buffers for
+     *  reuse. */
+    MachineProcessor(Machine machine, int capacity, int pool) {
+        if (capacity <= 0 || pool < 0) {
+            throw new IllegalArgumentException("bad buffer sizes");
+        }
+        _machine = machine;
+        _capacity = capacity;
+        _poolSize = pool;
+    }
+
+    /** A processor converting with MACHINE, with the default buffer
+     *  capacity and pool size. */
+    MachineProcessor(Machine machine) {
+        this(machine, DEFAULT_CAPACITY, DEFAULT_POOL);
+    }
+
+    /** Return BUFFER, a buffer I published that its subscriber no
+     *  longer needs, to the pool of free buffers. */
+    void recycle(CharBuffer buffer) {
+        synchronized (this) {
+            if (buffer.capacity() == _capacity && _free.size() < _poolSize) {
+                _free.add(buffer.clear());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_subscriber == null) {
+                _subscriber = subscriber;
+                subscriber = null;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "MachineProcessor allows only one subscriber"));
+            return;
+        }
+        _subscriber.onSubscribe(new Downstream());
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        boolean accept;
+        synchronized (this) {
+            accept = _upstream == null && !_cancelled;
+            if (accept) {
+                _upstream = subscription;
+            }
+        }
+        if (accept) {
+            drain();
+        } else {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(CharBuffer chunk) {
+        try {
+            while (chunk.hasRemaining()) {
+                CharBuffer out = acquire();
+                _machine.convert(chunk, out);
+                synchronized (this) {
+                    _ready.add(out.flip());
+                }
+            }
+        } catch (EnigmaException excp) {
+            Flow.Subscription upstream;
+            synchronized (this) {
+                upstream = _upstream;
+                _error = excp;
+                _done = true;
+            }
+            upstream.cancel();
+        }
+        synchronized (this) {
+            _requested = false;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        synchronized (this) {
+            if (!_done) {
+                _error = error;
+                _done = true;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            _done = true;
+        }
+        drain();
+    }
+
+    /** Return a free output buffer, allocating one if none is
+     *  pooled. */
+    private CharBuffer acquire() {
+        synchronized (this) {
+            if (!_free.isEmpty()) {
+                return _free.poll();
+            }
+        }
+        return CharBuffer.allocate(_capacity);
+    }
+
+    /** Deliver what output and signals the subscriber's demand allows,
+     *  and ask for the next input chunk once all output has been
+     *  delivered.  Only one thread drains at a time; others calling
+     *  meanwhile make it go round again. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (true) {
+                CharBuffer out;
+                synchronized (this) {
+                    if (_cancelled || _subscriber == null || _demand == 0
+                        || _ready.isEmpty()) {
+                        break;
+                    }
+                    out = _ready.poll();
+                    _demand -= 1;
+                }
+                _subscriber.onNext(out);
+            }
+            Flow.Subscription request = null;
+            Throwable error = null;
+            boolean complete = false;
+            synchronized (this) {
+                if (_cancelled || _subscriber == null) {
+                    _ready.clear();
+                } else if (_done && (_ready.isEmpty() || _error != null)
+                           && !_terminated) {
+                    _terminated = true;
+                    _ready.clear();
+                    error = _error;
+                    complete = error == null;
+                } else if (!_done && _ready.isEmpty() && _demand > 0
+                           && !_requested && _upstream != null) {
+                    _requested = true;
+                    request = _upstream;
+                }
+            }
+            if (error != null) {
+                _subscriber.onError(error);
+            } else if (complete) {
+                _subscriber.onComplete();
+            } else if (request != null) {
+                request.request(1);
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** The subscription of my subscriber. */
+    private class Downstream implements Flow.Subscription {
+
+        @Override
+        public void request(long n) {
+            Flow.Subscription upstream = null;
+            synchronized (MachineProcessor.this) {
+                if (n <= 0) {
+                    if (!_done) {
+                        _error = new IllegalArgumentException(
+                            "non-positive request");
+                        _done = true;
+                        upstream = _upstream;
+                    }
+                } else {
+                    _demand = _demand + n < 0 ? Long.MAX_VALUE : _demand + n;
+                }
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (MachineProcessor.this) {
+                _cancelled = true;
+                upstream = _upstream;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+            drain();
+        }
+    }
+
+    /** Machine converting the stream. */
+    private final Machine _machine;
+
+    /** Capacity of output buffers. */
+    private final int _capacity;
+
+    /** Largest number of free buffers kept. */
+    private final int _poolSize;
+
+    /** Free output buffers. */
+    private final ArrayDeque<CharBuffer> _free = new ArrayDeque<>();
+
+    /** Converted buffers waiting for demand. */
+    private final ArrayDeque<CharBuffer> _ready = new ArrayDeque<>();
+
+    /** Number of threads that have asked to drain, while one is. */
+    private final AtomicInteger _wip = new AtomicInteger();
+
+    /** My subscriber, or null. */
+    private Flow.Subscriber<? super CharBuffer> _subscriber;
+
+    /** Subscription to my publisher, or null. */
+    private Flow.Subscription _upstream;
+
+    /** Output buffers requested and not yet delivered. */
+    private long _demand;
+
+    /** True while an input chunk has been requested and not received. */
+    private boolean _requested;
+
+    /** True once the input has ended or failed. */
+    private boolean _done;
+
+    /** The error ending the stream, or null. */
+    private Throwable _error;
+
+    /** True once my subscriber has been sent onComplete or onError. */
+    private boolean _terminated;
+
+    /** True once my subscriber has cancelled. */
+    private boolean _cancelled;
+
+}
@@ -0,0 +1,221 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/** The suite of all JUnit tests for the MachineProcessor class.
+ *  @author Nhu Vu
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** A publisher subscription that records the demand it is sent. */
+    private static class Upstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /** Total demand received. */
+        private long requested;
+        /** True once cancelled. */
+        private boolean cancelled;
+    }
+
+    /** A subscriber that records what it receives, requesting only when
+     *  told to, and recycles buffers to PROCESSOR. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        /** A collector recycling to PROCESSOR. */
+        Collector(MachineProcessor processor) {
+            _processor = processor;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(CharBuffer chunk) {
+            chunks.add(chunk.toString());
+            buffers.add(chunk);
+            _processor.recycle(chunk);
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            error = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+
+        /** Request N chunks. */
+        void request(long n) {
+            _subscription.request(n);
+        }
+
+        /** Chunks received. */
+        private final List<String> chunks = new ArrayList<>();
+        /** Buffers received. */
+        private final List<CharBuffer> buffers = new ArrayList<>();
+        /** Error received, or null. */
+        private Throwable error;
+        /** True once completed. */
+        private boolean complete;
+        /** Processor receiving recycled buffers. */
+        private final MachineProcessor _processor;
+        /** My subscription. */
+        private Flow.Subscription _subscription;
+    }
+
+    @Test
+    public void testDemand() {
+        MachineProcessor processor =
+            new MachineProcessor(MachineTest.sampleMachine(), 10, 2);
+        Upstream upstream = new Upstream();
+        Collector collector = new Collector(processor);
+        processor.subscribe(collector);
+        processor.onSubscribe(upstream);
+        assertEquals(0, upstream.requested);
+
+        collector.request(1);
+        assertEquals(1, upstream.requested);
+        processor.onNext(CharBuffer.wrap(MachineTest.PLAIN));
+        assertEquals(List.of("QVPQSOKOIL"), collector.chunks);
+        assertEquals(1, upstream.requested);
+
+        collector.request(5);
+        assertEquals(List.of("QVPQSOKOIL", "PUBKJZPISF", "XDW"),
+                     collector.chunks);
+        assertEquals(2, upstream.requested);
+        processor.onNext(CharBuffer.wrap("HELLO"));
+        assertEquals(4, collector.chunks.size());
+        assertSame(collector.buffers.get(0), collector.buffers.get(3));
+
+        processor.onComplete();
+        assertTrue(collector.complete);
+        assertNull(collector.error);
+    }
+
+    @Test
+    public void testError() {
+        MachineProcessor processor =
+            new MachineProcessor(MachineTest.sampleMachine());
+        Upstream upstream = new Upstream();
+        Collector collector = new Collector(processor);
+        processor.subscribe(collector);
+        processor.onSubscribe(upstream);
+        collector.request(10);
+        processor.onNext(CharBuffer.wrap("HELLO1"));
+        assertTrue(upstream.cancelled);
+        assertTrue(collector.error instanceof EnigmaException);
+        assertFalse(collector.complete);
+    }
+
+    @Test
+    public void testBadRequest() {
+        MachineProcessor processor =
+            new MachineProcessor(MachineTest.sampleMachine());
+        Upstream upstream = new Upstream();
+        Collector collector = new Collector(processor);
+        processor.subscribe(collector);
+        processor.onSubscribe(upstream);
+        collector.request(0);
+        assertTrue(upstream.cancelled);
+        assertTrue(collector.error instanceof IllegalArgumentException);
+        assertFalse(collector.complete);
+    }
+
+    @Test
+    public void testCancel() {
+        MachineProcessor processor =
+            new MachineProcessor(MachineTest.sampleMachine());
+        Upstream upstream = new Upstream();
+        Collector collector = new Collector(processor);
+        processor.subscribe(collector);
+        processor.onSubscribe(upstream);
+        collector._subscription.cancel();
+        assertTrue(upstream.cancelled);
+        Collector second = new Collector(processor);
+        processor.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testWithPublisher() throws InterruptedException {
+        String msg = MachineTest.randomMessage(100000);
+        String expected = MachineTest.sampleMachine().convert(msg);
+        MachineProcessor processor =
+            new MachineProcessor(MachineTest.sampleMachine(), 1000, 4);
+        StringBuilder result = new StringBuilder();
+        Object done = new Object();
+        processor.subscribe(new Flow.Subscriber<CharBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                _subscription = subscription;
+                subscription.request(3);
+            }
+
+            @Override
+            public void onNext(CharBuffer chunk) {
+                result.append(chunk);
+                processor.recycle(chunk);
+                _subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable excp) {
+                fail(excp.toString());
+            }
+
+            @Override
+            public void onComplete() {
+                synchronized (done) {
+                    _complete = true;
+                    done.notifyAll();
+                }
+            }
+
+            /** My subscription. */
+            private Flow.Subscription _subscription;
+        });
+        try (SubmissionPublisher<CharBuffer> publisher =
+             new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int k = 0; k < msg.length(); k += 777) {
+                publisher.submit(CharBuffer.wrap(
+                    msg, k, Math.min(msg.length(), k + 777)));
+            }
+        }
+        synchronized (done) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!_complete && System.nanoTime() < deadline) {
+                done.wait(100);
+            }
+        }
+        assertEquals(expected, result.toString());
+    }
+
+    /** True once testWithPublisher's subscriber has completed. */
+    private volatile boolean _complete;
+}
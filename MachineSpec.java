@@ -0,0 +1,253 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The immutable description of a configured machine: its alphabet,
+ *  the wiring and notches of the rotors in each slot, and its
+ *  plugboard.  Everything that changes as characters are converted
+ *  lives in a separate MachineState, so one spec may be shared by any
+ *  number of threads, each converting with its own state.
+ *  @author Nhu Vu
+ */
+final class MachineSpec {
+
+    /** The spec of MACHINE, which must have its rotors inserted and its
+     *  plugboard set.  Later changes to MACHINE do not affect the spec. */
+    MachineSpec(Machine machine) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _numRotors = machine.numRotors();
+        _pawls = machine.numPawls();
+        _forward = new int[_numRotors][];
+        _backward = new int[_numRotors][];
+        _notches = new int[_numRotors][];
+        _next = new int[_numRotors][];
+        for (int i = 0; i < _numRotors; i++) {
+            Rotor rotor = machine.rotor(i);
+            if (rotor == null) {
+                throw error("Rotors must be inserted first.");
+            }
+            Permutation perm = rotor.permutation();
+            _forward[i] = new int[2 * _size];
+            _backward[i] = new int[2 * _size];
+            _notches[i] = new int[_size];
+            for (int p = 0; p < 2 * _size; p++) {
+                _forward[i][p] = perm.permute(p);
+                _backward[i][p] = perm.invert(p);
+            }
+            if (rotor.rotates()) {
+                for (int p = 0; p < _size; p++) {
+                    _notches[i][p] = ((MovingRotor) rotor).atNotch(p) ? 1 : 0;
+                }
+            }
+            _next[i] = new int[2 * _size];
+            for (int p = 0; p < _size; p++) {
+                for (int carry = 0; carry <= 1; carry++) {
+                    boolean moves = advances(i, _numRotors, _pawls,
+                                             carry == 1, _notches[i][p] == 1);
+                    _next[i][2 * p + carry] =
+                        moves ? (p + 1 == _size ? 0 : p + 1) : p;
+                }
+            }
+        }
+        Permutation plugboard = machine.plugboard();
+        if (plugboard == null) {
+            throw error("Plugboard must be set first.");
+        }
+        _plugboard = new int[_size];
+        for (int p = 0; p < _size; p++) {
+            _plugboard[p] = plugboard.permute(p);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots I have. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls I have. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the wiring table of slot SLOT, indexed by contact over two
+     *  revolutions.  The table itself is returned and must not be
+     *  changed. */
+    int[] forwardTable(int slot) {
+        return _forward[slot];
+    }
+
+    /** Return the inverse wiring table of slot SLOT, laid out as for
+     *  forwardTable. */
+    int[] backwardTable(int slot) {
+        return _backward[slot];
+    }
+
+    /** Return true iff setting POSN of slot SLOT is at a notch. */
+    boolean atNotch(int slot, int posn) {
+        return _notches[slot][posn] != 0;
+    }
+
+    /** Return the notch table of slot SLOT: 1 at each setting that is at
+     *  a notch and 0 elsewhere.  The table itself is returned and must
+     *  not be changed. */
+    int[] notchTable(int slot) {
+        return _notches[slot];
+    }
+
+    /** Return the stepping table of slot SLOT.  Entry 2 * P + C is the
+     *  setting that follows setting P on a keypress, where C is 1 if
+     *  the rotor to the right of the slot is at a notch and 0 if not
+     *  (and is ignored in the rightmost slot).  The tables are built
+     *  from advances, so stepping by them follows Machine exactly.  The
+     *  table itself is returned and must not be changed. */
+    int[] nextTable(int slot) {
+        return _next[slot];
+    }
+
+    /** Return true iff the rotor in slot SLOT of a machine with
+     *  NUMROTORS slots and PAWLS pawls advances on a keypress, where
+     *  DRIVEN tells whether the rotor to its right is at a notch and
+     *  NOTCH whether it is itself at one.  This is the one statement of
+     *  the stepping rule, which every way of stepping a machine
+     *  follows: the rightmost rotor always advances; each other rotor
+     *  with a pawl advances if the rotor to its right is at a notch, or
+     *  if it is itself at a notch and the rotor to its left has a pawl
+     *  (the double step). */
+    static boolean advances(int slot, int numRotors, int pawls,
+                            boolean driven, boolean notch) {
+        int first = numRotors - pawls;
+        if (slot < first) {
+            return false;
+        }
+        return slot == numRotors - 1 || driven || slot > first && notch;
+    }
+
+    /** Return my plugboard mapping.  The table itself is returned and
+     *  must not be changed. */
+    int[] plugboardTable() {
+        return _plugboard;
+    }
+
+    /** Return a state with every slot at setting 0. */
+    MachineState newState() {
+        return new MachineState(new int[_numRotors]);
+    }
+
+    /** Return a state with the rotors set according to SETTING, which
+     *  must be a string of numRotors()-1 characters in my alphabet, as
+     *  for Machine.setRotors. */
+    MachineState newState(String setting) {
+        int[] posns = setting.codePoints().toArray();
+        if (posns.length != _numRotors - 1) {
+            throw error("Setting must have %d characters.", _numRotors - 1);
+        }
+        int[] positions = new int[_numRotors];
+        for (int i = 1; i < _numRotors; i++) {
+            positions[i] = _alphabet.toIndex(posns[i - 1]);
+        }
+        return new MachineState(positions);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  STATE, exactly as Machine.convert(int) does. */
+    int convert(MachineState state, int c) {
+        step(state);
+        return _plugboard[scramble(state, _plugboard[c])];
+    }
+
+    /** Advance STATE for one keypress. */
+    void step(MachineState state) {
+        int[] posn = state.positions();
+        int last = _numRotors - 1;
+        for (int i = _numRotors - _pawls; i < last; i++) {
+            int carry = _notches[i + 1][posn[i + 1]];
+            posn[i] = _next[i][2 * posn[i] + carry];
+        }
+        posn[last] = _next[last][2 * posn[last]];
+    }
+
+    /** Return the result of passing contact P through the rotors at
+     *  STATE and back, without the plugboard and without advancing. */
+    int scramble(MachineState state, int p) {
+        int[] posn = state.positions();
+        for (int i = _numRotors - 1; i >= 0; i--) {
+            p = shift(_forward[i], p, posn[i]);
+        }
+        for (int i = 1; i < _numRotors; i++) {
+            p = shift(_backward[i], p, posn[i]);
+        }
+        return p;
+    }
+
+    /** Return the permutation of my alphabet applied by the plugboard
+     *  and rotors at STATE, without advancing, as for
+     *  Machine.permutation. */
+    Permutation permutation(MachineState state) {
+        int[] table = new int[_size];
+        for (int c = 0; c < _size; c++) {
+            table[c] = _plugboard[scramble(state, _plugboard[c])];
+        }
+        return new Permutation(table, _alphabet);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF, storing the
+     *  results in DST starting at DSTOFF and advancing STATE
+     *  accordingly.  SRC and DST may be the same array. */
+    void convert(MachineState state, char[] src, int srcOff,
+                 char[] dst, int dstOff, int len) {
+        for (int i = 0; i < len; i++) {
+            int c = convert(state, _alphabet.toInt(src[srcOff + i]));
+            dst[dstOff + i] = _alphabet.toChar(c);
+        }
+    }
+
+    /** Returns the encoding/decoding of MSG, advancing STATE. */
+    String convert(MachineState state, String msg) {
+        char[] buffer = msg.toCharArray();
+        convert(state, buffer, 0, buffer, 0, buffer.length);
+        return new String(buffer);
+    }
+
+    /** Return the conversion of contact P by a rotor at setting POSN
+     *  whose doubled wiring table is TABLE. */
+    private int shift(int[] table, int p, int posn) {
+        int result = table[p + posn] - posn;
+        return result < 0 ? result + _size : result;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Wiring of the rotor in each slot, indexed by contact over two
+     *  revolutions so that a setting can be added without wrapping. */
+    private final int[][] _forward;
+
+    /** Inverse wiring of each slot, laid out as _forward. */
+    private final int[][] _backward;
+
+    /** 1 at each notch of each slot and 0 elsewhere. */
+    private final int[][] _notches;
+
+    /** Stepping table of each slot, as returned by nextTable. */
+    private final int[][] _next;
+
+    /** Plugboard mapping. */
+    private final int[] _plugboard;
+
+}
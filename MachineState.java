@@ -0,0 +1,55 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The rotor positions of one session of a machine described by a
+ *  MachineSpec: just the setting of each rotor slot, slot 0 being the
+ *  reflector.  States are cheap to create and copy, so each thread or
+ *  request keeps its own while sharing a single spec.
+ *  @author Nhu Vu
+ */
+final class MachineState {
+
+    /** A state with the slot settings in POSITIONS, which is copied. */
+    MachineState(int[] positions) {
+        _positions = positions.clone();
+    }
+
+    /** A state holding the current rotor settings of MACHINE. */
+    MachineState(Machine machine) {
+        this(machine.stateAt(0));
+    }
+
+    /** Return a new state with my settings. */
+    MachineState copy() {
+        return new MachineState(_positions);
+    }
+
+    /** Return the number of rotor slots I describe. */
+    int numRotors() {
+        return _positions.length;
+    }
+
+    /** Return the setting of slot SLOT. */
+    int position(int slot) {
+        return _positions[slot];
+    }
+
+    /** Set slot SLOT, which must not be the reflector, to POSN. */
+    void set(int slot, int posn) {
+        if (slot == 0 && posn != 0) {
+            throw error("reflector has only one position");
+        }
+        _positions[slot] = posn;
+    }
+
+    /** Return my settings array itself, for MachineSpec to update in
+     *  place. */
+    int[] positions() {
+        return _positions;
+    }
+
+    /** Setting of each rotor slot. */
+    private final int[] _positions;
+
+}
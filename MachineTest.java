@@ -0,0 +1,552 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Nhu Vu
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Notches of the naval moving rotors, as name/notches pairs. */
+    static final String[] NOTCHES = {
+        "I", "Q", "II", "E", "III", "V", "IV", "J", "V", "Z",
+        "VI", "ZM", "VII", "ZM", "VIII", "ZM",
+    };
+
+    /** Return a 5-slot, 3-pawl machine holding all the naval rotors. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < NOTCHES.length; i += 2) {
+            rotors.add(new MovingRotor(NOTCHES[i],
+                    new Permutation(NAVALA.get(NOTCHES[i]), UPPER),
+                    NOTCHES[i + 1]));
+        }
+        for (String name : new String[] { "Beta", "Gamma" }) {
+            rotors.add(new FixedRotor(name,
+                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                    new Permutation(NAVALA.get(name), UPPER)));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Return a naval machine set up as in the project's sample input. */
+    static Machine sampleMachine() {
+        Machine machine = navalMachine();
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        return machine;
+    }
+
+    /** Sample plaintext. */
+    static final String PLAIN = "FROMHISSHOULDERHIAWATHA";
+
+    /** Encryption of PLAIN by sampleMachine(). */
+    static final String CIPHER = "QVPQSOKOILPUBKJZPISFXDW";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertString() {
+        assertEquals(CIPHER, sampleMachine().convert(PLAIN));
+        assertEquals(PLAIN, sampleMachine().convert(CIPHER));
+    }
+
+    @Test
+    public void testConvertEncoded() {
+        EncodedText text = EncodedText.encode(UPPER, PLAIN);
+        Machine machine = sampleMachine();
+        machine.convert(text, 0, 4);
+        machine.convert(text, 4, PLAIN.length() - 4);
+        assertEquals(CIPHER, text.toString());
+        sampleMachine().convert(text);
+        assertEquals(PLAIN, text.toString());
+    }
+
+    @Test
+    public void testConvertCharArray() {
+        char[] src = ("##" + PLAIN).toCharArray();
+        char[] dst = new char[PLAIN.length() + 1];
+        sampleMachine().convert(src, 2, dst, 1, PLAIN.length());
+        assertEquals(CIPHER, new String(dst, 1, PLAIN.length()));
+    }
+
+    @Test
+    public void testConvertBytes() {
+        byte[] buf = PLAIN.getBytes();
+        sampleMachine().convert(buf, 0, buf, 0, buf.length);
+        assertEquals(CIPHER, new String(buf));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testConvertBytesWideAlphabet() {
+        Machine machine = new Machine(new Alphabet("AB\u0100"), 2, 1,
+                                      List.of());
+        byte[] buf = { 'A' };
+        machine.convert(buf, 0, buf, 0, buf.length);
+    }
+
+    @Test
+    public void testConvertCharBuffer() {
+        Machine machine = sampleMachine();
+        CharBuffer src = CharBuffer.wrap(PLAIN);
+        CharBuffer dst = CharBuffer.allocate(10);
+        StringBuilder result = new StringBuilder();
+        while (src.hasRemaining()) {
+            machine.convert(src, dst);
+            dst.flip();
+            result.append(dst);
+            dst.clear();
+        }
+        assertEquals(CIPHER, result.toString());
+    }
+
+    @Test
+    public void testDoubleStep() {
+        Machine machine = navalMachine();
+        machine.insertRotors(new String[] { "B", "Beta", "I", "II", "III" });
+        machine.setRotors("AADU");
+        machine.setPlugboard(new Permutation("", UPPER));
+        String[] expected = { "AADV", "AAEW", "ABFX", "ABFY" };
+        for (String setting : expected) {
+            machine.convert(0);
+            int[] state = machine.stateAt(0);
+            for (int i = 1; i < state.length; i++) {
+                assertEquals(setting, setting.charAt(i - 1),
+                             UPPER.toChar(state[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testStateAtMatchesConvert() {
+        Machine machine = navalMachine();
+        machine.insertRotors(new String[] { "B", "Beta", "VI", "II", "V" });
+        machine.setRotors("AZEY");
+        machine.setPlugboard(new Permutation("", UPPER));
+        int[][] predicted = new int[20000][];
+        for (int n = 0; n < predicted.length; n++) {
+            predicted[n] = machine.stateAt(n);
+        }
+        for (int n = 0; n < predicted.length; n++) {
+            assertArrayEquals("after " + n, predicted[n], machine.stateAt(0));
+            machine.convert(0);
+        }
+    }
+
+    @Test
+    public void testSeek() {
+        Machine machine = sampleMachine();
+        int[] far = machine.stateAt(123456789L);
+        machine.seek(123456000L);
+        assertArrayEquals(far, machine.stateAt(789));
+        Machine resumed = sampleMachine();
+        resumed.seek(10);
+        assertEquals(CIPHER.substring(10),
+                     resumed.convert(PLAIN.substring(10)));
+    }
+
+    /** Return a 4-slot, 3-pawl machine whose two rightmost rotors have
+     *  notches at adjacent settings, so that Machine.stateAt cannot use
+     *  its closed form, set at ADV. */
+    static Machine adjacentNotchMachine() {
+        List<Rotor> rotors = List.of(
+            new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)),
+            new MovingRotor("L", new Permutation(NAVALA.get("I"), UPPER),
+                            "Q"),
+            new MovingRotor("M", new Permutation(NAVALA.get("II"), UPPER),
+                            "DE"),
+            new MovingRotor("R", new Permutation(NAVALA.get("III"), UPPER),
+                            "VW"));
+        Machine machine = new Machine(UPPER, 4, 3, rotors);
+        machine.insertRotors(new String[] { "B", "L", "M", "R" });
+        machine.setRotors("ADV");
+        machine.setPlugboard(new Permutation("", UPPER));
+        return machine;
+    }
+
+    @Test
+    public void testSeekAdjacentNotches() {
+        Machine machine = adjacentNotchMachine();
+        int[] near = machine.stateAt(40000);
+        int[] far = machine.stateAt(Long.MAX_VALUE);
+        machine.seek(Long.MAX_VALUE - 1000);
+        assertArrayEquals(far, machine.stateAt(1000));
+        machine.setRotors("ADV");
+        for (int n = 0; n < 40000; n++) {
+            machine.convert(0);
+        }
+        assertArrayEquals(near, machine.stateAt(0));
+    }
+
+    /** Return a random message of LEN upper-case letters. */
+    static String randomMessage(int len) {
+        Random random = new Random(len);
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i++) {
+            msg[i] = UPPER_STRING.charAt(random.nextInt(UPPER_STRING.length()));
+        }
+        return new String(msg);
+    }
+
+    @Test
+    public void testParallelConvert() {
+        String msg = randomMessage(200000);
+        Machine serial = sampleMachine(), parallel = sampleMachine();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelConverter converter =
+                new ParallelConverter(parallel, pool, 997);
+            assertEquals(serial.convert(msg), converter.convert(msg));
+            assertArrayEquals(serial.stateAt(0), parallel.stateAt(0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelConvertAdjacentNotches() {
+        String msg = randomMessage(200000);
+        Machine serial = adjacentNotchMachine();
+        Machine parallel = adjacentNotchMachine();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelConverter converter =
+                new ParallelConverter(parallel, pool, 997);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(serial.convert(msg), converter.convert(msg));
+                assertArrayEquals(serial.stateAt(0), parallel.stateAt(0));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return a string of cycles over UPPER, built with RANDOM, of a
+     *  random permutation, or of a random involution with no fixed
+     *  points if PAIRS. */
+    static String randomCycles(Random random, boolean pairs) {
+        List<Character> letters = new ArrayList<>();
+        for (char ch : UPPER_STRING.toCharArray()) {
+            letters.add(ch);
+        }
+        Collections.shuffle(letters, random);
+        StringBuilder cycles = new StringBuilder();
+        int k = 0;
+        while (k < letters.size()) {
+            int len = pairs ? 2 : 1 + random.nextInt(letters.size() - k);
+            cycles.append('(');
+            for (int i = k; i < k + len; i++) {
+                cycles.append(letters.get(i));
+            }
+            cycles.append(") ");
+            k += len;
+        }
+        return cycles.toString();
+    }
+
+    /** Number of random machines on which every path is checked. */
+    private static final int RANDOM_TRIALS = 25;
+
+    /** Length of each cycle "(XY) " of a string of pairs. */
+    private static final int PAIR_LENGTH = 5;
+
+    /** Return a machine of 3 to 6 slots and 1 to 3 pawls, so that its
+     *  settings have a period short enough to test, with random rotors,
+     *  notches (often adjacent ones), settings and plugboard, built with
+     *  RANDOM. */
+    static Machine randomMachine(Random random) {
+        int numRotors = 3 + random.nextInt(4);
+        int pawls = 1 + random.nextInt(Math.min(3, numRotors - 1));
+        List<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        for (int i = 0; i < numRotors; i++) {
+            names[i] = "R" + i;
+            if (i == 0) {
+                rotors.add(new Reflector(names[i], new Permutation(
+                    randomCycles(random, true), UPPER)));
+            } else if (i < numRotors - pawls) {
+                rotors.add(new FixedRotor(names[i], new Permutation(
+                    randomCycles(random, false), UPPER)));
+            } else {
+                StringBuilder notches = new StringBuilder();
+                for (int n = random.nextInt(4); n >= 0; n--) {
+                    int p = random.nextInt(UPPER.size());
+                    notches.append(UPPER.toChar(p));
+                    if (random.nextBoolean()) {
+                        notches.append(UPPER.toChar((p + 1) % UPPER.size()));
+                    }
+                }
+                String distinct = notches.chars().distinct()
+                    .collect(StringBuilder::new, StringBuilder::appendCodePoint,
+                             StringBuilder::append).toString();
+                rotors.add(new MovingRotor(names[i], new Permutation(
+                    randomCycles(random, false), UPPER), distinct));
+            }
+        }
+        Machine machine = new Machine(UPPER, numRotors, pawls, rotors);
+        machine.insertRotors(names);
+        char[] setting = new char[numRotors - 1];
+        for (int i = 0; i < setting.length; i++) {
+            setting[i] = UPPER.toChar(random.nextInt(UPPER.size()));
+        }
+        machine.setRotors(new String(setting));
+        String plugs = randomCycles(random, true);
+        machine.setPlugboard(new Permutation(
+            plugs.substring(0, PAIR_LENGTH * random.nextInt(UPPER.size() / 2)),
+            UPPER));
+        return machine;
+    }
+
+    @Test
+    public void testPathsAgreeOnRandomMachines() {
+        Random random = new Random(61);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        KeystreamCache keystreams = new KeystreamCache();
+        try {
+            for (int trial = 0; trial < RANDOM_TRIALS; trial++) {
+                Machine machine = randomMachine(random);
+                String msg = randomMessage(3000 + trial);
+                Machine reference = machine.copy();
+                String expected = reference.convert(msg);
+                String where = "machine " + trial;
+
+                MachineSpec spec = new MachineSpec(machine);
+                MachineState state = new MachineState(machine);
+                assertEquals(where, expected, spec.convert(state, msg));
+                assertArrayEquals(where, reference.stateAt(0),
+                                  state.positions());
+                assertArrayEquals(where, reference.stateAt(0),
+                                  machine.stateAt(msg.length()));
+
+                Machine parallel = machine.copy();
+                assertEquals(where, expected,
+                             new ParallelConverter(parallel, pool, 97)
+                             .convert(msg));
+                assertArrayEquals(where, reference.stateAt(0),
+                                  parallel.stateAt(0));
+
+                KeystreamCache.Keystream keys = keystreams.get(machine);
+                if (keys != null) {
+                    EncodedText text = EncodedText.encode(UPPER, msg);
+                    keys.cursor().convert(text, 0, text.length());
+                    assertEquals(where, expected, text.toString());
+                }
+
+                checkLanes(where, machine, msg, new ScalarLanes(spec, 5));
+                if (LaneEngine.vectorAvailable()) {
+                    checkLanes(where, machine, msg, new VectorLanes(spec, 19));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Check that ENGINE converts MSG in each lane as a copy of MACHINE
+     *  does after converting lane number * 31 further characters,
+     *  reporting failures with WHERE. */
+    private static void checkLanes(String where, Machine machine, String msg,
+                                   LaneEngine engine) {
+        int lanes = engine.lanes();
+        String[] expected = new String[lanes];
+        for (int k = 0; k < lanes; k++) {
+            Machine lane = machine.copy();
+            lane.convert(randomMessage(31 * k));
+            engine.setState(k, new MachineState(lane));
+            expected[k] = lane.convert(msg);
+        }
+        int[] text = new int[msg.length() * lanes];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = UPPER.toInt(msg.charAt(i / lanes));
+        }
+        engine.convert(text, msg.length());
+        for (int k = 0; k < lanes; k++) {
+            char[] result = new char[msg.length()];
+            for (int t = 0; t < result.length; t++) {
+                result[t] = UPPER.toChar(text[t * lanes + k]);
+            }
+            assertEquals(where + " lane " + k, expected[k],
+                         new String(result));
+        }
+    }
+
+    @Test
+    public void testSharedRotorCollection() {
+        Machine first = navalMachine();
+        Machine second = new Machine(UPPER, 5, 3, first.availableRotors());
+        for (Machine m : new Machine[] { first, second }) {
+            m.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+            m.setRotors("AXLE");
+            m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                           UPPER));
+        }
+        assertEquals(CIPHER.substring(0, 10),
+                     first.convert(PLAIN.substring(0, 10)));
+        assertEquals(CIPHER, second.convert(PLAIN));
+        assertEquals(CIPHER.substring(10),
+                     first.convert(PLAIN.substring(10)));
+    }
+
+    @Test
+    public void testSpecMatchesMachine() {
+        Machine machine = sampleMachine();
+        MachineSpec spec = new MachineSpec(machine);
+        MachineState state = spec.newState("AXLE");
+        assertEquals(CIPHER, spec.convert(state, PLAIN));
+        machine.convert(PLAIN);
+        String msg = randomMessage(20000);
+        assertEquals(machine.convert(msg), spec.convert(state, msg));
+        assertArrayEquals(machine.stateAt(0), state.positions());
+    }
+
+    @Test
+    public void testSpecConcurrentSessions() {
+        MachineSpec spec = new MachineSpec(sampleMachine());
+        String msg = randomMessage(5000);
+        String expected = sampleMachine().convert(msg);
+        assertTrue(IntStream.range(0, 64).parallel()
+                   .mapToObj(i -> spec.convert(spec.newState("AXLE"), msg))
+                   .allMatch(expected::equals));
+    }
+
+    /** Number of characters in largeMachine's alphabet. */
+    static final int LARGE_SIZE = 3000;
+
+    /** First code point of largeMachine's alphabet, in CJK Extension B
+     *  (all supplementary characters). */
+    static final int LARGE_BASE = 0x20000;
+
+    /** Return a random permutation of 0..N-1 drawn from RANDOM. */
+    private static int[] shuffled(int n, Random random) {
+        int[] result = IntStream.range(0, n).toArray();
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a 3-slot, 2-pawl machine over an alphabet of LARGE_SIZE
+     *  supplementary characters spread too thinly for a dense index,
+     *  with random wirings, set to its first character throughout. */
+    static Machine largeMachine() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < LARGE_SIZE; i++) {
+            chars.appendCodePoint(LARGE_BASE + 7 * i);
+        }
+        Alphabet alphabet = new Alphabet(chars.toString());
+        Random random = new Random(LARGE_SIZE);
+        int[] order = shuffled(LARGE_SIZE, random);
+        int[] reflect = new int[LARGE_SIZE];
+        for (int i = 0; i < LARGE_SIZE; i += 2) {
+            reflect[order[i]] = order[i + 1];
+            reflect[order[i + 1]] = order[i];
+        }
+        String notch = new String(Character.toChars(LARGE_BASE));
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(reflect, alphabet)));
+        rotors.add(new MovingRotor("L", new Permutation(
+            shuffled(LARGE_SIZE, random), alphabet), notch));
+        rotors.add(new MovingRotor("F", new Permutation(
+            shuffled(LARGE_SIZE, random), alphabet), notch));
+        Machine machine = new Machine(alphabet, 3, 2, rotors);
+        machine.insertRotors(new String[] { "R", "L", "F" });
+        machine.setRotors(notch + notch);
+        machine.setPlugboard(new Permutation("", alphabet));
+        return machine;
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        Machine machine = largeMachine();
+        Alphabet alphabet = machine.alphabet();
+        assertFalse(alphabet.bmp());
+        assertTrue(machine.rotor(1).size() > Rotor.MAX_TABLE_SIZE);
+        StringBuilder msg = new StringBuilder();
+        Random random = new Random(1);
+        for (int i = 0; i < 2 * LARGE_SIZE; i++) {
+            msg.appendCodePoint(
+                alphabet.toCodePoint(random.nextInt(LARGE_SIZE)));
+        }
+        MachineSpec spec = new MachineSpec(machine);
+        MachineState state = spec.newState(
+            new String(Character.toChars(LARGE_BASE)).repeat(2));
+        String cipher = machine.convert(msg.toString());
+        assertNotEquals(msg.toString(), cipher);
+        int[] plain = msg.codePoints().toArray();
+        int[] encrypted = cipher.codePoints().toArray();
+        for (int i = 0; i < plain.length; i++) {
+            assertEquals(encrypted[i], alphabet.toCodePoint(
+                spec.convert(state, alphabet.toIndex(plain[i]))));
+        }
+        assertEquals(msg.toString(), largeMachine().convert(cipher));
+    }
+
+    @Test
+    public void testSessionSplitsSurrogates() {
+        Machine machine = largeMachine();
+        String settings = "* R L F " + new String(Character.toChars(
+            LARGE_BASE)).repeat(2) + "\n";
+        String msg = largeMachine().convert(
+            new String(Character.toChars(LARGE_BASE + 7)).repeat(6));
+        String input = settings + msg + "\n";
+        Session session = new Session(machine);
+        ByteBuffer out =
+            ByteBuffer.allocate(Session.MAX_BYTES * input.length());
+        int half = settings.length() + 3;
+        session.convert(CharBuffer.wrap(input, 0, half), out);
+        session.convert(CharBuffer.wrap(input, half, input.length()), out);
+        session.finish(out);
+        String expected = new String(Character.toChars(LARGE_BASE + 7));
+        assertEquals(expected.repeat(5) + " " + expected + "\n",
+                     new String(out.array(), 0, out.position(),
+                                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStatePermutation() {
+        Machine machine = sampleMachine();
+        MachineSpec spec = new MachineSpec(machine);
+        MachineState state = spec.newState("AXLE");
+        for (int i = 0; i < PLAIN.length(); i++) {
+            spec.step(state);
+            Permutation perm = spec.permutation(state);
+            assertTrue(perm.involution());
+            assertTrue(perm.derangement());
+            char ch = PLAIN.charAt(i);
+            assertEquals(CIPHER.charAt(i), perm.permute(ch));
+            int c = machine.convert(UPPER.toInt(ch));
+            assertEquals(c, machine.permutation().permute(UPPER.toInt(ch)));
+        }
+    }
+
+
+}
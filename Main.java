@@ -1,13 +1,38 @@
 package enigma;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
 
+import java.net.SocketAddress;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 
+import static java.nio.file.StandardOpenOption.*;
 import static enigma.EnigmaException.*;
 
 /** Enigma simulator.
@@ -23,7 +48,27 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  A leading MAPPED_FLAG argument selects
+     *  memory-mapped mode, in which both files must be given and the
+     *  alphabet must consist of single-byte (ISO-8859-1) characters.
+     *  A leading BATCH_FLAG argument instead converts the messages
+     *  following each settings line concurrently, each on its own copy
+     *  of the machine, writing the results in input order.  A leading
+     *  SERVE_FLAG argument, followed by the configuration file and an
+     *  address (HOST:PORT or unix:PATH), instead runs a Server on that
+     *  address until the process is killed.
+     *  Setting the system property JMX_PROPERTY to true publishes the
+     *  simulator's Metrics over JMX, and setting STATS_PROPERTY to a
+     *  number of milliseconds prints a summary of them on the standard
+     *  error that often, and once more at the end.  Setting
+     *  KEYSTREAM_PROPERTY to a number of bytes keeps the keystreams of
+     *  repeated keys in a KeystreamCache of that size, and setting
+     *  ConfigCache.CACHE_DIR_PROPERTY to a directory keeps compiled
+     *  configurations there in a ConfigCache.  Setting
+     *  ConfigIndex.INDEX_PROPERTY to true keeps the index of a
+     *  configuration of INDEX_THRESHOLD bytes or more in a file beside
+     *  it, which is checked against samples of the configuration, or
+     *  against all of it if ConfigIndex.STRICT_PROPERTY is true. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,16 +81,40 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        if (args.length > 0 && args[0].equals(SERVE_FLAG)) {
+            if (args.length != 3) {
+                throw error("%s requires a configuration and an address",
+                            SERVE_FLAG);
+            }
+            readConfigFile(args[1]);
+            _serveAddress = Server.address(args[2]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(MAPPED_FLAG)) {
+            if (args.length != 4) {
+                throw error("%s requires input and output files",
+                            MAPPED_FLAG);
+            }
+            readConfigFile(args[1]);
+            _mappedInput = Paths.get(args[2]);
+            _mappedOutput = Paths.get(args[3]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+            _batch = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        readConfigFile(args[0]);
 
         if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.UTF_8));
         }
 
         if (args.length > 2) {
@@ -55,19 +124,36 @@ public final class Main {
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Take the configuration from the file named NAME.  Its contents
+     *  are read now unless it is at least INDEX_THRESHOLD bytes long, in
+     *  which case only the rotors inserted are parsed, through a
+     *  ConfigIndex, and errors in the others are not reported. */
+    private void readConfigFile(String name) {
+        try {
+            Path path = Paths.get(name);
+            if (Files.size(path) >= INDEX_THRESHOLD) {
+                _configPath = path;
+            } else {
+                _configText = Files.readAllBytes(path);
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a buffered Reader reading from the file named NAME. */
+    private BufferedReader getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return Files.newBufferedReader(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a stream writing to the file named NAME. */
+    private OutputStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return Files.newOutputStream(Paths.get(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -75,121 +161,348 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine config = readConfig();
-        if (_input.nextLine().equals("")) {
-            throw error("Input file has nothing");
-        } else {
-            if (!_input.next().equals("*")) {
-                throw error("Must begin with settings line");
+     *  results to _output.  Input is consumed a buffer at a time, so
+     *  memory use does not depend on the length of lines or messages. */
+    void process() {
+        if (Boolean.getBoolean(JMX_PROPERTY)) {
+            _metrics.register();
+        }
+        long budget = Long.getLong(KEYSTREAM_PROPERTY, 0);
+        if (budget > 0) {
+            _keystreams = new KeystreamCache(budget);
+        }
+        long period = Long.getLong(STATS_PROPERTY, 0);
+        long start = Metrics.now();
+        ScheduledExecutorService stats =
+            period > 0 ? _metrics.report(System.err, period) : null;
+        try {
+            Machine machine = readConfig();
+            if (_serveAddress != null) {
+                try (Server server = new Server(machine, _serveAddress,
+                                                _keystreams, _metrics)) {
+                    System.err.printf("Serving on %s%n", server.address());
+                    server.serve();
+                }
+                return;
+            }
+            if (_mappedInput != null) {
+                processMapped(machine, _mappedInput, _mappedOutput);
+                return;
             }
-            while (_input.hasNextLine()) {
-                String message = "";
-                String settings;
+            if (_batch) {
+                processBatch(machine, _input, _output);
+            } else {
+                process(machine, _input, _output);
+            }
+            _output.flush();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        } finally {
+            if (stats != null) {
+                stats.shutdownNow();
+                System.err.println(_metrics.summary(0,
+                                                    Metrics.now() - start));
+            }
+        }
+    }
 
+    /** Apply MACHINE to the settings and message lines read from INPUT,
+     *  writing converted message lines to OUTPUT in UTF-8.  The parsing,
+     *  conversion and output are done by a Session, which converts
+     *  through _keystreams if it is not null. */
+    private void process(Machine machine, Reader input, OutputStream output)
+        throws IOException {
+        Session session = new Session(machine, StandardCharsets.UTF_8,
+                                      _keystreams, _metrics);
+        char[] buffer = new char[BUFFER_SIZE];
+        ByteBuffer out = ByteBuffer.allocate(Session.MAX_BYTES * BUFFER_SIZE);
+        for (int n = input.read(buffer); n != -1; n = input.read(buffer)) {
+            CharBuffer chunk = CharBuffer.wrap(buffer, 0, n);
+            while (chunk.hasRemaining()) {
+                session.convert(chunk, out);
+                output.write(out.array(), 0, out.position());
+                out.clear();
             }
         }
-        printMessageLine(config.convert(message));
+        session.finish(out);
+        output.write(out.array(), 0, out.position());
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Apply copies of MACHINE to the settings and message lines read
+     *  from INPUT, writing converted message lines to OUTPUT.  Each
+     *  settings line and the message lines up to the next one form an
+     *  independent unit that is converted on a work-stealing pool.  At
+     *  most a fixed number of units per processor are in flight, and
+     *  their results are written in input order. */
+    private void processBatch(Machine machine, BufferedReader input,
+                              OutputStream output) throws IOException {
+        int window = BATCH_WINDOW * Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newWorkStealingPool();
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
         try {
-            String alpha = _config.nextLine();
-            Alphabet alphabet = new Alphabet(alpha);
-            int rotors = _config.nextInt();
-            int pawls = _config.nextInt();
-            ArrayList<Rotor> myrotors = new ArrayList<Rotor>();
-            _config.nextLine();
-            while (_config.hasNextLine()) {
-                myrotors.add(readRotor());
+            StringBuilder unit = new StringBuilder();
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                if (line.stripLeading().startsWith("*") && unit.length() > 0) {
+                    if (pending.size() == window) {
+                        output.write(result(pending.remove()));
+                    }
+                    pending.add(submitUnit(pool, machine, unit.toString()));
+                    unit.setLength(0);
+                }
+                unit.append(line).append('\n');
             }
-            return new Machine(alphabet, rotors, pawls, myrotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            if (unit.length() > 0) {
+                pending.add(submitUnit(pool, machine, unit.toString()));
+            }
+            while (!pending.isEmpty()) {
+                output.write(result(pending.remove()));
+            }
+        } finally {
+            pool.shutdownNow();
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Submit UNIT, the text of a settings line and its message lines,
+     *  to POOL for conversion by a copy of MACHINE, returning the future
+     *  converted text. */
+    private Future<byte[]> submitUnit(ExecutorService pool, Machine machine,
+                                      String unit) {
+        Machine copy = machine.copy();
+        return pool.submit(() -> {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            process(copy, new StringReader(unit), result);
+            return result.toByteArray();
+        });
+    }
+
+    /** Wait for and return the value of FUTURE, reporting any error it
+     *  raised as this thread's own. */
+    private byte[] result(Future<byte[]> future) throws IOException {
         try {
-            String nameLine = _config.nextLine();
-            String[] nameArray = nameLine.split("\\s+");
-            String name = nameArray[1];
-            String type = nameArray[2];
-            String cycle = "";
-            while (_config.hasNext()) {
-                String line = _config.next();
-                if (line.charAt(0) == '(') {
-                    cycle += line;
-                } else {
-                    break;
+            return future.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof EnigmaException) {
+                throw (EnigmaException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Apply MACHINE to the settings and message lines in the file
+     *  INPUT, writing converted message lines to the file OUTPUT.  Both
+     *  files are accessed through memory-mapped windows and hold
+     *  single-byte (ISO-8859-1) characters.  Input is decoded from its
+     *  mapping a buffer at a time for a Session, which writes straight
+     *  into the output mapping.  OUTPUT is truncated to the bytes
+     *  written even if an error stops the conversion part way, so it is
+     *  never left padded to the end of the window. */
+    private void processMapped(Machine machine, Path input, Path output)
+        throws IOException {
+        try (FileChannel in = FileChannel.open(input, READ);
+             FileChannel out = FileChannel.open(output, READ, WRITE,
+                                                CREATE, TRUNCATE_EXISTING)) {
+            Session session = new Session(machine, StandardCharsets.ISO_8859_1,
+                                          _keystreams, _metrics);
+            CharsetDecoder decoder = StandardCharsets.ISO_8859_1.newDecoder();
+            CharBuffer chunk = CharBuffer.allocate(BUFFER_SIZE);
+            _outChannel = out;
+            _outBase = 0;
+            _outMap = out.map(MapMode.READ_WRITE, 0, MAP_WINDOW);
+            try {
+                long size = in.size();
+                for (long base = 0; base < size; base += MAP_WINDOW) {
+                    MappedByteBuffer src =
+                        in.map(MapMode.READ_ONLY, base,
+                               Math.min(MAP_WINDOW, size - base));
+                    while (src.hasRemaining()) {
+                        decoder.decode(src, chunk, false);
+                        chunk.flip();
+                        while (chunk.hasRemaining()) {
+                            if (_outMap.remaining() < Session.MAX_BYTES) {
+                                remapOutput();
+                            }
+                            session.convert(chunk, _outMap);
+                        }
+                        chunk.clear();
+                    }
                 }
+                if (_outMap.remaining() < Session.MAX_BYTES) {
+                    remapOutput();
+                }
+                session.finish(_outMap);
+            } finally {
+                out.truncate(_outBase + _outMap.position());
             }
-            String notches = Character.toString(type.charAt(1));
-            if (Character.toString(type.charAt(1)).equals("M")) {
-                return new Reflector(name, new Permutation(cycle, _alphabet));
-            } else if (Character.toString(type.charAt(1)).equals("N")) {
-                return new FixedRotor(name, new Permutation(cycle, _alphabet));
-            } else {
-                return new MovingRotor(name,
-                        new Permutation(cycle, _alphabet), notches);
+        } finally {
+            _outMap = null;
+            _outChannel = null;
+        }
+    }
+
+    /** Map the next window of the output file just past the bytes
+     *  written so far. */
+    private void remapOutput() throws IOException {
+        _outBase += _outMap.position();
+        _outMap = _outChannel.map(MapMode.READ_WRITE, _outBase, MAP_WINDOW);
+    }
+
+    /** Return an Enigma machine configured from the contents of configuration
+     *  file _config.  If a configuration cache is enabled (see
+     *  ConfigCache.CACHE_DIR_PROPERTY), the compiled configuration is
+     *  taken from it when it has an entry for the same text, and
+     *  otherwise is parsed and then added to the cache.  A large
+     *  configuration file, at _configPath, is instead read through its
+     *  index, leaving its rotors to be read when inserted. */
+    private Machine readConfig() throws IOException {
+        long start = Metrics.now();
+        if (_configPath != null) {
+            Machine machine = Boolean.getBoolean(ConfigIndex.INDEX_PROPERTY)
+                ? ConfigIndex.load(_configPath)
+                : ConfigIndex.scan(_configPath).machine();
+            _alphabet = machine.alphabet();
+            _metrics.configLoaded(Metrics.now() - start, false);
+            return machine;
+        }
+        ConfigCache cache = ConfigCache.fromProperty();
+        Machine machine = cache == null ? null : cache.load(_configText);
+        boolean cached = machine != null;
+        if (!cached) {
+            _config = new Scanner(new String(_configText,
+                                             StandardCharsets.UTF_8));
+            machine = parseConfig();
+            if (cache != null) {
+                cache.store(_configText, machine);
+            }
+        }
+        _alphabet = machine.alphabet();
+        _metrics.configLoaded(Metrics.now() - start, cached);
+        return machine;
+    }
+
+    /** Return an Enigma machine configured by parsing _config. */
+    private Machine parseConfig() {
+        try {
+            String alpha = _config.next();
+            _alphabet = new Alphabet(alpha);
+            int rotors = _config.nextInt();
+            int pawls = _config.nextInt();
+            ArrayList<Rotor> myrotors = new ArrayList<Rotor>();
+            while (_config.hasNext()) {
+                myrotors.add(RotorLibrary.readRotor(_config, _alphabet));
             }
+            return new Machine(_alphabet, rotors, pawls, myrotors);
         } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            throw error("configuration file truncated");
         }
     }
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
         Scanner reader = new Scanner(settings);
         String[] rotorsL = new String[M.numRotors()];
-        if (reader.hasNext("[*]")) {
+        try {
+            if (!reader.next().equals("*")) {
+                throw error("Settings line must start with '*'!");
+            }
             for (int i = 0; i < M.numRotors(); i++) {
                 rotorsL[i] = reader.next();
             }
             M.insertRotors(rotorsL);
-            String cycle = "";
-            if (reader.hasNext("[)(]")) {
-                cycle += reader.next();
-            }
-            M.setPlugboard(new Permutation(cycle, _alphabet));
-        } else {
-            throw error("Settings line must start with '*'!");
+            M.setRotors(reader.next());
+        } catch (NoSuchElementException excp) {
+            throw error("Settings line is truncated!");
         }
-    }
-
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        if (msg.length() == 0) {
-            _output.println();
-        } else {
-            String printedMsg = msg;
-            for (int index = 0; index < printedMsg.length(); index++) {
-                if ((index + 1) % 5 == 0) {
-                    _output.print(" ");
-                }
-            }
+        String cycle = "";
+        while (reader.hasNext()) {
+            cycle += reader.next();
         }
-        _output.println();
+        M.setPlugboard(new Permutation(cycle, M.alphabet()));
     }
 
-    /** New string for config. */
-    private String _nextStr = null;
+    /** Size of the character buffers used for input. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Command-line flag selecting concurrent processing of messages. */
+    static final String BATCH_FLAG = "--batch";
+
+    /** Maximum number of batch units in flight per processor. */
+    private static final int BATCH_WINDOW = 4;
+
+    /** True iff messages are converted concurrently. */
+    private boolean _batch;
+
+    /** System property that, when true, publishes metrics over JMX. */
+    static final String JMX_PROPERTY = "enigma.jmx";
+
+    /** System property giving the period in milliseconds of the stats
+     *  line printed on the standard error. */
+    static final String STATS_PROPERTY = "enigma.stats";
+
+    /** System property giving the memory budget in bytes of a
+     *  KeystreamCache for keys used by several messages; none is kept
+     *  if it is unset or 0. */
+    static final String KEYSTREAM_PROPERTY = "enigma.keystream";
+
+    /** Cache of keystreams, or null. */
+    private KeystreamCache _keystreams;
+
+    /** Counters describing the work done. */
+    private final Metrics _metrics = Metrics.GLOBAL;
+
+    /** Command-line flag selecting server mode. */
+    static final String SERVE_FLAG = "--serve";
+
+    /** Address served on in server mode, or null. */
+    private SocketAddress _serveAddress;
+
+    /** Command-line flag selecting memory-mapped mode. */
+    static final String MAPPED_FLAG = "--mmap";
+
+    /** Size in bytes of each memory-mapped window onto a file. */
+    private static final long MAP_WINDOW = 1L << 26;
+
+    /** Input file in memory-mapped mode, or null. */
+    private Path _mappedInput;
+
+    /** Output file in memory-mapped mode, or null. */
+    private Path _mappedOutput;
+
+    /** Output file channel while processing in memory-mapped mode. */
+    private FileChannel _outChannel;
+
+    /** Current window onto _outChannel in memory-mapped mode. */
+    private MappedByteBuffer _outMap;
+
+    /** Offset in the output file of the start of _outMap. */
+    private long _outBase;
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private BufferedReader _input;
+
+    /** Text of the machine configuration file, unless it is large. */
+    private byte[] _configText;
+
+    /** The machine configuration file if it is large, or null. */
+    private Path _configPath;
+
+    /** Size in bytes from which a configuration file is read through a
+     *  ConfigIndex rather than all at once. */
+    static final long INDEX_THRESHOLD = 1L << 20;
 
-    /** Source of machine configuration. */
+    /** Source of machine configuration while it is parsed. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private OutputStream _output;
 }
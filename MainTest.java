@@ -0,0 +1,181 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the Main class, run end to end on
+ *  files.
+ *  @author Nhu Vu
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Directory for configurations, input and output. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** The sample configuration. */
+    static final String CONFIG = String.join("\n",
+        "  ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+        "  5 3",
+        "  I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "  II ME     (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "  III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "  IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "  V MZ      (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)",
+        "  VI MZM    (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)",
+        "  VII MZM   (ANOUPFRIMBZTLWKSVEGCJYDHXQ)",
+        "  VIII MZM  (AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)",
+        "  Beta NN   (ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        "  Gamma NN  (AFNIRLBSQWVXGUZDKMTPCOYJHE)",
+        "  B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)",
+        "            (RX) (SZ) (TV)",
+        "  C R       (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)",
+        "            (QZ) (SX) (UY)",
+        "");
+
+    /** The sample input: two messages under the same key, the second
+     *  also in groups, around a blank line. */
+    static final String INPUT = String.join("\n",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD",
+        "MADE OF SLIDING FOLDING ROSEWOOD",
+        "",
+        "NEATLY PUT IT ALL TOGETHER",
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "FROMH ISSHO",
+        "");
+
+    /** The output expected from INPUT. */
+    static final String OUTPUT = String.join("\n",
+        "QVPQS OKOIL PUBKJ ZPISF XDW",
+        "BHCNS CXNUO AATZX SRCFY DGU",
+        "FLPNX GXIXT YJUJR CAUGE UNCFM KUF",
+        "",
+        "WJFGK CIIRG XODJG VCGPQ OH",
+        "QVPQS OKOIL",
+        "");
+
+    /** Size of the keystream cache used by the tests that enable it. */
+    static final String KEYSTREAM_BUDGET = "1000000";
+
+    /** Remove any keystream cache setting left by a test. */
+    @After
+    public void clearKeystream() {
+        System.clearProperty(Main.KEYSTREAM_PROPERTY);
+    }
+
+    /** Run Main on the sample configuration and input, with leading
+     *  arguments FLAGS, check its output, and check that the output of
+     *  decoding that is the input's letters. */
+    private void checkMain(String... flags) throws IOException {
+        Path config = write("sample.conf", CONFIG);
+        Path input = write("sample.in", INPUT);
+        Path output = folder.getRoot().toPath().resolve("sample.out");
+        Main.main(args(flags, config, input, output));
+        assertEquals(OUTPUT, read(output));
+
+        Path decoded = folder.getRoot().toPath().resolve("sample.dec");
+        Path encoded = write("sample.enc",
+                             INPUT.substring(0, INPUT.indexOf('\n') + 1)
+                             + OUTPUT.substring(0, OUTPUT.indexOf("\nQ")
+                                                + 1));
+        Main.main(args(flags, config, encoded, decoded));
+        assertEquals(String.join("\n",
+                                 "FROMH ISSHO ULDER HIAWA THA",
+                                 "TOOKT HECAM ERAOF ROSEW OOD",
+                                 "MADEO FSLID INGFO LDING ROSEW OOD",
+                                 "",
+                                 "NEATL YPUTI TALLT OGETH ER",
+                                 ""),
+                     read(decoded));
+    }
+
+    /** Return the command-line arguments FLAGS followed by CONFIG,
+     *  INPUT and OUTPUT. */
+    private static String[] args(String[] flags, Path config, Path input,
+                                 Path output) {
+        String[] result = new String[flags.length + 3];
+        System.arraycopy(flags, 0, result, 0, flags.length);
+        result[flags.length] = config.toString();
+        result[flags.length + 1] = input.toString();
+        result[flags.length + 2] = output.toString();
+        return result;
+    }
+
+    /** Write TEXT to a new file NAME in the temporary folder and return
+     *  it. */
+    private Path write(String name, String text) throws IOException {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        checkMain();
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        checkMain(Main.MAPPED_FLAG);
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        checkMain(Main.BATCH_FLAG);
+    }
+
+    @Test
+    public void testMappedError() throws IOException {
+        Path config = write("sample.conf", CONFIG);
+        Path input = write("bad.in", INPUT.substring(0, INPUT.indexOf("TOOK"))
+                           + "HELLO1\n");
+        Path output = folder.getRoot().toPath().resolve("bad.out");
+        try {
+            new Main(args(new String[] { Main.MAPPED_FLAG }, config, input,
+                          output)).process();
+            fail("bad input converted");
+        } catch (EnigmaException excp) {
+            assertEquals(OUTPUT.substring(0, OUTPUT.indexOf('\n') + 1),
+                         read(output));
+        }
+    }
+
+    @Test
+    public void testStreamKeystream() throws IOException {
+        System.setProperty(Main.KEYSTREAM_PROPERTY, KEYSTREAM_BUDGET);
+        checkMain();
+    }
+
+    @Test
+    public void testMappedKeystream() throws IOException {
+        System.setProperty(Main.KEYSTREAM_PROPERTY, KEYSTREAM_BUDGET);
+        checkMain(Main.MAPPED_FLAG);
+    }
+
+    @Test
+    public void testBatchKeystream() throws IOException {
+        System.setProperty(Main.KEYSTREAM_PROPERTY, KEYSTREAM_BUDGET);
+        checkMain(Main.BATCH_FLAG);
+    }
+
+}
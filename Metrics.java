@@ -0,0 +1,252 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Counters and a latency histogram describing the work of a simulator.
+ *  Every counter is a LongAdder, so threads converting concurrently
+ *  update separate cells rather than contending for one word; callers
+ *  record a whole buffer or message at a time, so the cost on the
+ *  conversion path is a clock read and an add per buffer.  The counters
+ *  can be published as an MXBean and summarised periodically on a
+ *  stream.
+ *  @author Nhu Vu
+ */
+final class Metrics implements MetricsMXBean {
+
+    /** The counters of this process. */
+    static final Metrics GLOBAL = new Metrics();
+
+    /** Empty counters, started now. */
+    Metrics() {
+        _start = System.nanoTime();
+        for (int k = 0; k < _latency.length; k++) {
+            _latency[k] = new LongAdder();
+        }
+    }
+
+    /** Return the current time in nanoseconds, for timing an operation
+     *  to be recorded here. */
+    static long now() {
+        return System.nanoTime();
+    }
+
+    /** Record the conversion of CHARS characters in NANOS. */
+    void converted(long chars, long nanos) {
+        _chars.add(chars);
+        _convert.add(nanos);
+    }
+
+    /** Record NANOS spent writing output. */
+    void output(long nanos) {
+        _output.add(nanos);
+    }
+
+    /** Record NANOS spent parsing a settings line. */
+    void parsed(long nanos) {
+        _parse.add(nanos);
+    }
+
+    /** Record a message processed in NANOS. */
+    void message(long nanos) {
+        _messages.increment();
+        _latency[bucket(nanos)].increment();
+    }
+
+    /** Record a configuration loaded in NANOS, from the cache iff
+     *  CACHED. */
+    void configLoaded(long nanos, boolean cached) {
+        _configLoad = nanos;
+        _configCached = cached;
+    }
+
+    /** Return the histogram bucket of a latency of NANOS. */
+    private static int bucket(long nanos) {
+        return Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        return rate(_chars.sum(), now() - _start);
+    }
+
+    @Override
+    public long getMessagesProcessed() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getConfigLoadTime() {
+        return _configLoad;
+    }
+
+    @Override
+    public boolean isConfigCached() {
+        return _configCached;
+    }
+
+    @Override
+    public long getParseTime() {
+        return _parse.sum();
+    }
+
+    @Override
+    public long getConvertTime() {
+        return _convert.sum();
+    }
+
+    @Override
+    public long getOutputTime() {
+        return _output.sum();
+    }
+
+    @Override
+    public double getMessageLatencyMedian() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getMessageLatency99() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long[] getMessageLatencyHistogram() {
+        long[] result = new long[_latency.length];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = _latency[k].sum();
+        }
+        return result;
+    }
+
+    /** Return the upper bound, in milliseconds, of the histogram bucket
+     *  holding the latency below which fraction P of messages fall, or 0
+     *  if there are none. */
+    double percentile(double p) {
+        long[] counts = getMessageLatencyHistogram();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        long rank = (long) Math.ceil(p * total), seen = 0;
+        for (int k = 0; k < counts.length && total > 0; k++) {
+            seen += counts[k];
+            if (seen >= rank) {
+                return Math.scalb(1.0, k) / NANOS_PER_MILLI;
+            }
+        }
+        return 0.0;
+    }
+
+    /** Return the rate per second of COUNT events in NANOS. */
+    private static double rate(long count, long nanos) {
+        return nanos <= 0 ? 0.0 : count * NANOS_PER_SECOND / nanos;
+    }
+
+    /** Return a one-line summary of my counters, giving the conversion
+     *  rate since the last summary, which was made when CHARS
+     *  characters had been converted, NANOS ago. */
+    String summary(long chars, long nanos) {
+        long convert = getConvertTime(), output = getOutputTime();
+        long parse = getParseTime();
+        double busy = Math.max(1, convert + output + parse) / PERCENT;
+        return String.format("enigma: %d chars (%.0f/s), %d messages, "
+                             + "latency p50 %.3fms p99 %.3fms, "
+                             + "parse %.0f%% convert %.0f%% output %.0f%%",
+                             getCharactersConverted(),
+                             rate(getCharactersConverted() - chars, nanos),
+                             getMessagesProcessed(),
+                             getMessageLatencyMedian(),
+                             getMessageLatency99(),
+                             parse / busy, convert / busy, output / busy);
+    }
+
+    /** Publish me on the platform MBean server under OBJECT_NAME,
+     *  unless something is already registered there. */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException excp) {
+            return;
+        } catch (JMException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Print a summary line to OUT every PERIOD milliseconds on a daemon
+     *  thread, returning the service to shut down to stop it. */
+    ScheduledExecutorService report(PrintStream out, long period) {
+        ScheduledExecutorService service =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "enigma-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+        long[] last = { getCharactersConverted(), now() };
+        service.scheduleAtFixedRate(() -> {
+            long time = now();
+            out.println(summary(last[0], time - last[1]));
+            last[0] = getCharactersConverted();
+            last[1] = time;
+        }, period, period, TimeUnit.MILLISECONDS);
+        return service;
+    }
+
+    /** JMX name under which metrics are registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Nanoseconds per second. */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Scale of a percentage. */
+    private static final double PERCENT = 100.0;
+
+    /** Number of histogram buckets: one per possible bit length of a
+     *  latency. */
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    /** Time at which I was created. */
+    private final long _start;
+
+    /** Characters converted. */
+    private final LongAdder _chars = new LongAdder();
+
+    /** Messages processed. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Time spent parsing settings. */
+    private final LongAdder _parse = new LongAdder();
+
+    /** Time spent converting. */
+    private final LongAdder _convert = new LongAdder();
+
+    /** Time spent writing output. */
+    private final LongAdder _output = new LongAdder();
+
+    /** Message counts by bit length of their latency in nanoseconds. */
+    private final LongAdder[] _latency = new LongAdder[BUCKETS];
+
+    /** Time taken to load the configuration. */
+    private volatile long _configLoad;
+
+    /** True iff the configuration came from the cache. */
+    private volatile boolean _configCached;
+
+}
@@ -0,0 +1,46 @@
+package enigma;
+
+/** The management interface through which JMX clients read the
+ *  counters of a running simulator.  Times are in nanoseconds unless
+ *  named otherwise.
+ *  @author Nhu Vu
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the mean number of characters converted per second since
+     *  the counters were created. */
+    double getCharactersPerSecond();
+
+    /** Return the number of messages (settings lines and the message
+     *  lines that follow them) processed. */
+    long getMessagesProcessed();
+
+    /** Return the time taken to load the machine configuration. */
+    long getConfigLoadTime();
+
+    /** Return true iff the configuration came from the cache. */
+    boolean isConfigCached();
+
+    /** Return the total time spent parsing settings lines. */
+    long getParseTime();
+
+    /** Return the total time spent converting characters. */
+    long getConvertTime();
+
+    /** Return the total time spent writing output. */
+    long getOutputTime();
+
+    /** Return the median per-message latency, in milliseconds. */
+    double getMessageLatencyMedian();
+
+    /** Return the 99th percentile per-message latency, in
+     *  milliseconds. */
+    double getMessageLatency99();
+
+    /** Return the number of messages whose latency L satisfied
+     *  2**(k-1) <= L < 2**k nanoseconds, for each k. */
+    long[] getMessageLatencyHistogram();
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.stream.IntStream;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Nhu Vu
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void testCounters() {
+        Metrics metrics = new Metrics();
+        IntStream.range(0, 1000).parallel()
+            .forEach(i -> metrics.converted(3, 2));
+        metrics.output(5);
+        metrics.parsed(7);
+        assertEquals(3000, metrics.getCharactersConverted());
+        assertEquals(2000, metrics.getConvertTime());
+        assertEquals(5, metrics.getOutputTime());
+        assertEquals(7, metrics.getParseTime());
+        metrics.configLoaded(11, true);
+        assertEquals(11, metrics.getConfigLoadTime());
+        assertTrue(metrics.isConfigCached());
+    }
+
+    @Test
+    public void testLatency() {
+        Metrics metrics = new Metrics();
+        for (int i = 0; i < 98; i++) {
+            metrics.message(1_500_000);
+        }
+        metrics.message(3_000_000);
+        metrics.message(100_000_000);
+        assertEquals(100, metrics.getMessagesProcessed());
+        assertEquals(98, metrics.getMessageLatencyHistogram()[21]);
+        assertEquals(Math.scalb(1.0, 21) / 1e6,
+                     metrics.getMessageLatencyMedian(), 1e-9);
+        assertEquals(Math.scalb(1.0, 22) / 1e6,
+                     metrics.getMessageLatency99(), 1e-9);
+        assertEquals(0.0, new Metrics().getMessageLatency99(), 0.0);
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.converted(42, 1);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        metrics.register();
+        try {
+            assertEquals(42L,
+                         server.getAttribute(name, "CharactersConverted"));
+            metrics.register();
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testSummary() {
+        Metrics metrics = new Metrics();
+        metrics.converted(2000, 75);
+        metrics.output(25);
+        metrics.message(1);
+        String line = metrics.summary(1000, 1_000_000_000L);
+        assertTrue(line, line.startsWith("enigma: 2000 chars (1000/s), "
+                                         + "1 messages"));
+        assertTrue(line, line.endsWith("convert 75% output 25%"));
+    }
+}
@@ -16,7 +16,26 @@ class MovingRotor extends Rotor {
 
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        _notchAt = new boolean[size()];
+        notches.codePoints()
+            .forEach(cp -> _notchAt[alphabet().toIndex(cp)] = true);
+        _notchesBefore = new int[size() + 1];
+        for (int i = 0; i < size(); i++) {
+            _notchesBefore[i + 1] = _notchesBefore[i] + (_notchAt[i] ? 1 : 0);
+        }
+    }
+
+    /** A rotor like ROTOR, sharing its permutation, conversion and notch
+     *  tables but with its own setting. */
+    private MovingRotor(MovingRotor rotor) {
+        super(rotor);
+        _notchAt = rotor._notchAt;
+        _notchesBefore = rotor._notchesBefore;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
     }
 
     /** Return true iff I have a ratchet and can move. */
@@ -28,21 +47,83 @@ class MovingRotor extends Rotor {
     /** Advance me one position, if possible. */
     @Override
     void advance() {
-        int move = permutation().wrap(setting() + 1);
-        set(move);
+        int move = setting() + 1;
+        set(move == size() ? 0 : move);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     @Override
     boolean atNotch() {
-        char i = alphabet().toChar(setting());
-        CharSequence instance = Character.toString(i);
-        return _notches.contains(instance);
+        return _notchAt[setting()];
+    }
+
+    /** Returns true iff setting POSN is one of my notches. */
+    boolean atNotch(int posn) {
+        return _notchAt[posn];
+    }
+
+    /** Return the characters at my notches, in alphabet order. */
+    String notches() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size(); i++) {
+            if (_notchAt[i]) {
+                result.appendCodePoint(alphabet().toCodePoint(i));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the number of notches among the STEPS consecutive
+     *  settings starting at POSN (wrapping around). */
+    long notchCount(int posn, long steps) {
+        int total = _notchesBefore[size()];
+        long count = steps / size() * total;
+        int end = posn + (int) (steps % size());
+        if (end <= size()) {
+            count += _notchesBefore[end] - _notchesBefore[posn];
+        } else {
+            count += total - _notchesBefore[posn]
+                + _notchesBefore[end - size()];
+        }
+        return count;
+    }
+
+    /** Return the smallest number of consecutive settings starting at
+     *  POSN (wrapping around) that includes COUNT settings that are not
+     *  notches.  COUNT must be 0 unless I have a setting without a
+     *  notch. */
+    long stepsPastNotches(int posn, long count) {
+        if (count == 0) {
+            return 0;
+        }
+        int free = size() - _notchesBefore[size()];
+        long revolutions = (count - 1) / free;
+        long rest = (count - 1) % free;
+        int offset = 0;
+        while (_notchAt[(posn + offset) % size()] || rest > 0) {
+            if (!_notchAt[(posn + offset) % size()]) {
+                rest -= 1;
+            }
+            offset += 1;
+        }
+        return revolutions * size() + offset + 1;
+    }
+
+    /** Return true iff two of my notches are at consecutive settings. */
+    boolean adjacentNotches() {
+        for (int i = 0; i < size(); i++) {
+            if (_notchAt[i] && _notchAt[(i + 1) % size()]) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    /** String containing all notches. */
-    private String _notches;
+    /** Whether each setting is a notch. */
+    private final boolean[] _notchAt;
 
+    /** Number of notches among the settings below each index. */
+    private final int[] _notchesBefore;
 
 }
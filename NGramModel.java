@@ -0,0 +1,273 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A table of n-gram log probabilities over an alphabet, used to score
+ *  candidate decryptions.  The table is a flat float buffer indexed by
+ *  the n-gram's letters as base-size digits, so scoring a text is a
+ *  rolling index computation and one load per n-gram.
+ *
+ *  A model can be saved to a file and loaded back by mapping the file
+ *  read-only, so that a large table (26**4 quadgrams is 1.8 MB) lives
+ *  off the heap, is paged in on demand, and is shared by every thread
+ *  and every process using the same file.  The file is a header (magic
+ *  number, version, order and the alphabet's code points, one int
+ *  each), followed by size**order little-endian floats.
+ *  @author Nhu Vu
+ */
+class NGramModel {
+
+    /** Largest number of entries in a table. */
+    static final int MAX_ENTRIES = 1 << 26;
+
+    /** Count given to n-grams never seen in training. */
+    static final double FLOOR_COUNT = 0.01;
+
+    /** A model of n-grams of ORDER letters from ALPHABET, trained on the
+     *  letters of TEXT.  Code points of TEXT not in ALPHABET are
+     *  skipped. */
+    NGramModel(Alphabet alphabet, int order, CharSequence text) {
+        _alphabet = alphabet;
+        _order = order;
+        _high = entries(alphabet.size(), order - 1);
+        float[] table = new float[_high * alphabet.size()];
+        long[] counts = new long[table.length];
+        long total = 0;
+        int gram = 0, run = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = Character.codePointAt(text, i);
+            i += Character.charCount(cp);
+            if (!alphabet.containsCodePoint(cp)) {
+                continue;
+            }
+            gram = roll(gram, alphabet.toIndex(cp));
+            run += 1;
+            if (run >= order) {
+                counts[gram] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("No %d-grams in training text.", order);
+        }
+        for (int g = 0; g < table.length; g++) {
+            double count = counts[g] == 0 ? FLOOR_COUNT : counts[g];
+            table[g] = (float) Math.log10(count / total);
+        }
+        _table = FloatBuffer.wrap(table);
+    }
+
+    /** A model of n-grams of ORDER letters from ALPHABET whose log
+     *  probabilities are TABLE. */
+    private NGramModel(Alphabet alphabet, int order, FloatBuffer table) {
+        _alphabet = alphabet;
+        _order = order;
+        _high = entries(alphabet.size(), order - 1);
+        if (table.limit() != _high * alphabet.size()) {
+            throw error("N-gram table has the wrong size.");
+        }
+        _table = table;
+    }
+
+    /** Return the model saved in FILE, mapped read-only into memory. */
+    static NGramModel load(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer data =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < HEADER_SIZE || data.getInt() != MAGIC
+                || data.getInt() != VERSION) {
+                throw error("%s is not an n-gram model.", file);
+            }
+            int order = data.getInt();
+            int size = data.getInt();
+            if (size <= 0 || size > data.remaining() / Integer.BYTES) {
+                throw error("%s is not an n-gram model.", file);
+            }
+            StringBuilder chars = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                int cp = data.getInt();
+                if (!Character.isValidCodePoint(cp)) {
+                    throw error("%s is not an n-gram model.", file);
+                }
+                chars.appendCodePoint(cp);
+            }
+            return new NGramModel(new Alphabet(chars.toString()), order,
+                                  data.slice().order(ByteOrder.LITTLE_ENDIAN)
+                                  .asFloatBuffer());
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Write me to FILE in the form read by load. */
+    void save(Path file) {
+        int size = _alphabet.size();
+        ByteBuffer header =
+            ByteBuffer.allocate(HEADER_SIZE + size * Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(_order).putInt(size);
+        for (int i = 0; i < size; i++) {
+            header.putInt(_alphabet.toCodePoint(i));
+        }
+        header.position(0);
+        ByteBuffer chunk = ByteBuffer.allocate(SAVE_CHUNK * Float.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            FloatBuffer floats = chunk.asFloatBuffer();
+            for (int g = 0; g < _table.limit(); g += SAVE_CHUNK) {
+                int n = Math.min(SAVE_CHUNK, _table.limit() - g);
+                floats.clear();
+                floats.put(_table.duplicate().position(g).limit(g + n));
+                chunk.clear().limit(n * Float.BYTES);
+                writeFully(channel, chunk);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Write the remaining bytes of DATA to CHANNEL. */
+    private static void writeFully(FileChannel channel, ByteBuffer data)
+        throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /** Return SIZE ** N, throwing an error if a table of n-grams of one
+     *  more letter would be too large. */
+    private static int entries(int size, int n) {
+        if (n < 0) {
+            throw error("N-gram order must be positive.");
+        }
+        long result = 1;
+        for (int i = 0; i < n; i++) {
+            result *= size;
+            if (result * size > MAX_ENTRIES) {
+                throw error("N-gram table too large.");
+            }
+        }
+        return (int) result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of letters in my n-grams. */
+    int order() {
+        return _order;
+    }
+
+    /** Return the index of the n-gram made by dropping the first letter
+     *  of n-gram GRAM and appending letter index C. */
+    int roll(int gram, int c) {
+        return (gram % _high) * _alphabet.size() + c;
+    }
+
+    /** Return the log10 probability of the n-gram with index GRAM. */
+    float logProbability(int gram) {
+        return _table.get(gram);
+    }
+
+    /** Return the sum of the log probabilities of the n-grams of the
+     *  first LEN letter indices of TEXT. */
+    double score(int[] text, int len) {
+        double result = 0;
+        int gram = 0;
+        for (int i = 0; i < len; i++) {
+            gram = roll(gram, text[i]);
+            if (i >= _order - 1) {
+                result += _table.get(gram);
+            }
+        }
+        return result;
+    }
+
+    /** Return a scorer that accumulates my score of a text one letter
+     *  at a time. */
+    Scorer scorer() {
+        return new Scorer();
+    }
+
+    /** A running score of a text whose letters arrive one at a time, for
+     *  example as the outputs of Machine.convert(int).  A scorer is not
+     *  thread-safe, but any number of scorers may share one model. */
+    class Scorer {
+
+        /** Add letter index C to the text scored. */
+        void add(int c) {
+            _gram = roll(_gram, c);
+            _length += 1;
+            if (_length >= _order) {
+                _score += _table.get(_gram);
+            }
+        }
+
+        /** Return the score of the letters added since I was made or
+         *  reset, as given by NGramModel.score. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the number of letters added since I was made or
+         *  reset. */
+        long length() {
+            return _length;
+        }
+
+        /** Forget every letter added. */
+        void reset() {
+            _gram = 0;
+            _length = 0;
+            _score = 0;
+        }
+
+        /** Index of the last n-gram (or fewer letters) added. */
+        private int _gram;
+        /** Number of letters added. */
+        private long _length;
+        /** Sum of the log probabilities of the n-grams added. */
+        private double _score;
+    }
+
+    /** First word of every model file. */
+    private static final int MAGIC = 0x454e474d;
+
+    /** Version of the model file format. */
+    private static final int VERSION = 2;
+
+    /** Size in bytes of the fixed part of a model file header. */
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    /** Number of floats written at a time by save. */
+    private static final int SAVE_CHUNK = 1 << 14;
+
+    /** Alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Letters per n-gram. */
+    private final int _order;
+
+    /** Number of (n-1)-grams. */
+    private final int _high;
+
+    /** Log10 probability of each n-gram, read only with absolute gets
+     *  so that threads can share it. */
+    private final FloatBuffer _table;
+
+}
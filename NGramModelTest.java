@@ -0,0 +1,129 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the NGramModel class.
+ *  @author Nhu Vu
+ */
+public class NGramModelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Directory for model files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testModel() {
+        NGramModel model = new NGramModel(UPPER, 2, "AB AB-AC");
+        assertEquals(2, model.order());
+        int ab = model.roll(model.roll(0, 0), 1);
+        int ba = model.roll(model.roll(0, 1), 0);
+        assertEquals(Math.log10(2.0 / 5), model.logProbability(ab), 1e-6);
+        assertEquals(Math.log10(2.0 / 5), model.logProbability(ba), 1e-6);
+        assertEquals(Math.log10(NGramModel.FLOOR_COUNT / 5),
+                     model.logProbability(model.roll(0, 25)), 1e-6);
+        assertEquals(2 * model.logProbability(ab)
+                     + model.logProbability(ba),
+                     model.score(new int[] { 0, 1, 0, 1 }, 4), 1e-6);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testModelTooLarge() {
+        new NGramModel(UPPER, 7, RotorSearchTest.ENGLISH);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        NGramModel model = new NGramModel(UPPER, 4, RotorSearchTest.ENGLISH);
+        Path file = folder.getRoot().toPath().resolve("quad.ngm");
+        model.save(file);
+        NGramModel loaded = NGramModel.load(file);
+        assertEquals(4, loaded.order());
+        assertEquals(UPPER.size(), loaded.alphabet().size());
+        for (int g = 0; g < 26 * 26 * 26 * 26; g += 1) {
+            assertEquals(model.logProbability(g), loaded.logProbability(g),
+                         0.0);
+        }
+    }
+
+    @Test
+    public void testOddAlphabet() {
+        Alphabet alpha = new Alphabet("ABC");
+        NGramModel model = new NGramModel(alpha, 2, "ABCCBA");
+        Path file = folder.getRoot().toPath().resolve("odd.ngm");
+        model.save(file);
+        NGramModel loaded = NGramModel.load(file);
+        assertEquals('C', loaded.alphabet().toChar(2));
+        for (int g = 0; g < 9; g += 1) {
+            assertEquals(model.logProbability(g), loaded.logProbability(g),
+                         0.0);
+        }
+    }
+
+    @Test
+    public void testSupplementaryAlphabet() {
+        String chars = new String(new int[] { 'A', 0x1d538, 0x1d539 },
+                                  0, 3);
+        Alphabet alpha = new Alphabet(chars);
+        NGramModel model = new NGramModel(alpha, 2, chars + chars + "A");
+        assertEquals(Math.log10(2.0 / 6),
+                     model.logProbability(model.roll(model.roll(0, 1), 2)),
+                     1e-6);
+        Path file = folder.getRoot().toPath().resolve("wide.ngm");
+        model.save(file);
+        NGramModel loaded = NGramModel.load(file);
+        assertEquals(chars, loaded.alphabet().chars());
+        for (int g = 0; g < 9; g += 1) {
+            assertEquals(model.logProbability(g), loaded.logProbability(g),
+                         0.0);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLoadBadFile() throws IOException {
+        Path file = folder.newFile("bad.ngm").toPath();
+        Files.write(file, "not a model at all".getBytes());
+        NGramModel.load(file);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLoadTruncated() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("short.ngm");
+        new NGramModel(UPPER, 2, RotorSearchTest.ENGLISH).save(file);
+        byte[] data = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(data, data.length - 4));
+        NGramModel.load(file);
+    }
+
+    @Test
+    public void testScorer() {
+        NGramModel model = new NGramModel(UPPER, 3, RotorSearchTest.ENGLISH);
+        Machine machine = MachineTest.sampleMachine();
+        NGramModel.Scorer scorer = model.scorer();
+        int[] plain = new int[MachineTest.CIPHER.length()];
+        for (int i = 0; i < plain.length; i++) {
+            plain[i] = machine.convert(UPPER.toInt(
+                           MachineTest.CIPHER.charAt(i)));
+            scorer.add(plain[i]);
+            assertEquals(model.score(plain, i + 1), scorer.score(), 1e-9);
+        }
+        assertEquals(plain.length, scorer.length());
+        scorer.reset();
+        assertEquals(0.0, scorer.score(), 0.0);
+        assertEquals(0, scorer.length());
+    }
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Converts long messages with a machine by splitting them into chunks
+ *  that are converted concurrently on a fork/join pool.  All chunks
+ *  share one MachineSpec, and each starts from its own MachineState
+ *  taken from Machine.stateAt at the chunk's offset, so the result is
+ *  identical to converting the whole message serially.  Only the
+ *  calling thread uses the machine itself.
+ *  @author Nhu Vu
+ */
+class ParallelConverter {
+
+    /** A converter that runs MACHINE on POOL in chunks of at most
+     *  CHUNK characters. */
+    ParallelConverter(Machine machine, ForkJoinPool pool, int chunk) {
+        if (chunk <= 0) {
+            throw error("Chunk size must be positive.");
+        }
+        _machine = machine;
+        _pool = pool;
+        _chunk = chunk;
+    }
+
+    /** A converter that runs MACHINE on the common fork/join pool. */
+    ParallelConverter(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+    }
+
+    /** Returns the encoding/decoding of MSG, updating the state of my
+     *  machine as Machine.convert(String) would. */
+    String convert(String msg) {
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer, 0, buffer.length);
+        return new String(buffer);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF into DST
+     *  starting at DSTOFF, as Machine.convert(char[], ...) would, leaving
+     *  my machine advanced past them.  SRC and DST may be the same
+     *  array.  The starting state of every chunk is found here, before
+     *  any chunk is converted, so the workers never use my machine. */
+    void convert(char[] src, int srcOff, char[] dst, int dstOff, int len) {
+        if (len <= _chunk) {
+            _machine.convert(src, srcOff, dst, dstOff, len);
+            return;
+        }
+        MachineState[] starts = new MachineState[(len - 1) / _chunk + 1];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = new MachineState(_machine.stateAt((long) i * _chunk));
+        }
+        _pool.invoke(new Chunks(new MachineSpec(_machine), starts, src,
+                                srcOff, dst, dstOff, len, 0, starts.length));
+        _machine.seek(len);
+    }
+
+    /** Conversion of chunks [FIRST, LAST) of a message, where chunk I
+     *  is the characters at offsets I * _chunk up to the next chunk or
+     *  the end of the message. */
+    private class Chunks extends RecursiveAction {
+
+        /** Conversion with SPEC of chunks FIRST..LAST-1 of the LEN
+         *  characters from SRC at SRCOFF into DST at DSTOFF, chunk I
+         *  starting from STARTS[I]. */
+        Chunks(MachineSpec spec, MachineState[] starts, char[] src,
+               int srcOff, char[] dst, int dstOff, int len, int first,
+               int last) {
+            _spec = spec;
+            _starts = starts;
+            _src = src;
+            _srcOff = srcOff;
+            _dst = dst;
+            _dstOff = dstOff;
+            _len = len;
+            _first = first;
+            _last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (_last - _first == 1) {
+                int start = _first * _chunk;
+                int end = Math.min(_len, start + _chunk);
+                _spec.convert(_starts[_first], _src, _srcOff + start,
+                              _dst, _dstOff + start, end - start);
+            } else {
+                int mid = (_first + _last) >>> 1;
+                invokeAll(new Chunks(_spec, _starts, _src, _srcOff, _dst,
+                                     _dstOff, _len, _first, mid),
+                          new Chunks(_spec, _starts, _src, _srcOff, _dst,
+                                     _dstOff, _len, mid, _last));
+            }
+        }
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+        /** Spec shared by all chunks. */
+        private final MachineSpec _spec;
+        /** Starting state of each chunk. */
+        private final MachineState[] _starts;
+        /** Source characters. */
+        private final char[] _src;
+        /** Offset of the message in _src. */
+        private final int _srcOff;
+        /** Destination characters. */
+        private final char[] _dst;
+        /** Offset of the message in _dst. */
+        private final int _dstOff;
+        /** Length of the message. */
+        private final int _len;
+        /** First chunk converted by this task. */
+        private final int _first;
+        /** Chunk just past those converted by this task. */
+        private final int _last;
+    }
+
+    /** Default maximum number of characters per chunk. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** The machine whose state determines the conversion. */
+    private final Machine _machine;
+
+    /** Pool on which chunks are converted. */
+    private final ForkJoinPool _pool;
+
+    /** Maximum number of characters per chunk. */
+    private final int _chunk;
+
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -12,18 +14,113 @@ class Permutation {
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored.  The c's may be any code points, including
+     *  supplementary characters. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        for (int i = 0; i < size(); i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        compile();
+    }
+
+    /** Set this Permutation to the one mapping each index I of ALPHABET
+     *  to FORWARD[I], which must be a permutation of 0..size()-1.  The
+     *  array is copied. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (forward.length != size()) {
+            throw error("Wiring table has the wrong size!");
+        }
+        _forward = forward.clone();
+        _inverse = new int[size()];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < size(); i++) {
+            int to = _forward[i];
+            if (to < 0 || to >= size() || _inverse[to] != -1) {
+                throw error("Wiring table is not a permutation!");
+            }
+            _inverse[to] = i;
+        }
+    }
+
+    /** A permutation of ALPHABET whose tables are FORWARD and its
+     *  inverse INVERSE, which are used as they are. */
+    private Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = inverse;
+    }
+
+    /** Return the permutation of my alphabet mapping each index I to
+     *  FORWARD[I], which must be a permutation and is not copied. */
+    private Permutation derived(int[] forward) {
+        int[] inverse = new int[forward.length];
+        for (int i = 0; i < forward.length; i++) {
+            inverse[forward[i]] = i;
+        }
+        return new Permutation(_alphabet, forward, inverse);
+    }
 
-        if (_cycles.equals("()")) {
+    /** Parse _cycles once, filling in _forward and _inverse so that
+     *  permute() and invert() become single array loads. */
+    private void compile() {
+        boolean[] seen = new boolean[size()];
+        boolean open = false;
+        int first = -1, prev = -1;
+        for (int k = 0; k < _cycles.length();
+             k += Character.charCount(_cycles.codePointAt(k))) {
+            int ch = _cycles.codePointAt(k);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            } else if (ch == '(') {
+                if (open) {
+                    throw error("Cycles are invalid!");
+                }
+                open = true;
+            } else if (ch == ')') {
+                if (!open || first == -1) {
+                    throw error("Cycles are invalid!");
+                }
+                addCycleLink(prev, first);
+                open = false;
+                first = -1;
+            } else if (!open) {
+                throw error("Cycles are invalid!");
+            } else {
+                int index = _alphabet.toIndex(ch);
+                if (seen[index]) {
+                    throw error("Character %c repeated in cycles!", ch);
+                }
+                seen[index] = true;
+                if (first == -1) {
+                    first = index;
+                } else {
+                    addCycleLink(prev, index);
+                }
+                prev = index;
+            }
+        }
+        if (open) {
             throw error("Cycles are invalid!");
         }
     }
 
+    /** Record that FROM maps to TO under this permutation. */
+    private void addCycleLink(int from, int to) {
+        _forward[from] = to;
+        _inverse[to] = from;
+    }
+
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
         int r = p % size();
         if (r < 0) {
             r += size();
@@ -39,66 +136,69 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        int i = this.wrap(p);
-        int j = _cycles.indexOf(_alphabet.toChar(i));
-        if (_cycles.isBlank()) {
-            return i;
-        } else if (!_cycles.contains(Character.toString(_alphabet.toChar(i)))) {
-            return i;
-        } else if (_cycles.charAt(j - 1) == '('
-                && _cycles.charAt(j + 1) == ')') {
-            return i;
-        } else if (_cycles.charAt(j - 1) == '('
-                && _alphabet.contains(_cycles.charAt(j + 1))) {
-            return _alphabet.toInt(_cycles.charAt(j + 1));
-        } else if (_cycles.charAt(j + 1) == ')') {
-            while (_cycles.charAt(j - 1) != '(') {
-                j--;
-            }
-            return _alphabet.toInt(_cycles.charAt(j));
-        } else {
-            return _alphabet.toInt(_cycles.charAt(j + 1));
-        }
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        int i = this.wrap(c);
-        int j = _cycles.indexOf(_alphabet.toChar(i));
-        if (_cycles.isBlank()) {
-            return i;
-        } else if (!_cycles.contains(Character.toString(_alphabet.toChar(i)))) {
-            return i;
-        } else if (_cycles.charAt(j - 1) == '('
-                && _cycles.charAt(j + 1) == ')') {
-            return i;
-        } else if (_cycles.charAt(j + 1) == ')'
-                && _alphabet.contains(_cycles.charAt(j - 1))) {
-            return _alphabet.toInt(_cycles.charAt(j - 1));
-        } else if (_cycles.charAt(j - 1) == '(') {
-            while (_cycles.charAt(j + 1) != ')') {
-                j++;
-            }
-            return _alphabet.toInt(_cycles.charAt(j));
-        } else {
-            return _alphabet.toInt(_cycles.charAt(j - 1));
-        }
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        int index = this._alphabet.toInt(p);
-        int result = this.permute(index);
-        return this._alphabet.toChar(result);
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        int index = this._alphabet.toInt(c);
-        int result = this.invert(index);
-        return this._alphabet.toChar(result);
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
+    }
+
+    /** Return the permutation that applies me and then OTHER, which
+     *  must permute an alphabet of the same size. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("Permutations have different sizes!");
+        }
+        int[] forward = new int[size()];
+        for (int i = 0; i < forward.length; i++) {
+            forward[i] = other._forward[_forward[i]];
+        }
+        return derived(forward);
+    }
+
+    /** Return my inverse. */
+    Permutation inverse() {
+        return new Permutation(_alphabet, _inverse, _forward);
+    }
+
+    /** Return the result of applying me K times, where K may be
+     *  negative.  Each cycle is rotated by K modulo its length, so this
+     *  takes time linear in size() whatever K is. */
+    Permutation power(long k) {
+        int[] forward = new int[size()];
+        int[] cycle = new int[size()];
+        boolean[] seen = new boolean[size()];
+        for (int start = 0; start < forward.length; start++) {
+            int len = 0;
+            for (int p = start; !seen[p]; p = _forward[p]) {
+                seen[p] = true;
+                cycle[len] = p;
+                len += 1;
+            }
+            int shift = len == 0 ? 0 : (int) Math.floorMod(k, (long) len);
+            for (int i = 0; i < len; i++) {
+                forward[cycle[i]] = cycle[(i + shift) % len];
+            }
+        }
+        return derived(forward);
+    }
+
+    /** Return true iff I am my own inverse. */
+    boolean involution() {
+        return Arrays.equals(_forward, _inverse);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -109,11 +209,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < this._alphabet.size(); i++) {
-            char c = this._alphabet.toChar(i);
-            if (this._cycles.indexOf(c) == -1) {
-                return false;
-            } else if (this.permute(c) == c) {
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 return false;
             }
         }
@@ -124,8 +221,15 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** String containing cycles of this permutation. */
+    /** String containing cycles of this permutation, or null if it was
+     *  built from a table. */
     private String _cycles;
 
+    /** Image of each alphabet index under this permutation. */
+    private int[] _forward;
+
+    /** Image of each alphabet index under the inverse permutation. */
+    private int[] _inverse;
+
 }
 
@@ -154,4 +154,106 @@ public class PermutationTest {
 
     }
 
+    /** Makes sure a character may not appear in two cycles. */
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedCycleChar() {
+        new Permutation("(ABC) (CD)", UPPER);
+    }
+
+    /** Makes sure unbalanced parentheses are rejected. */
+    @Test(expected = EnigmaException.class)
+    public void testUnclosedCycle() {
+        new Permutation("(ABC) (DE", UPPER);
+    }
+
+    /** Alphabets with widely spread code points use the hashed index. */
+    @Test
+    public void testSparseAlphabet() {
+        Alphabet alphabet = new Alphabet("A\u4e2d\uac00Z");
+        assertEquals(1, alphabet.toInt('\u4e2d'));
+        assertEquals(2, alphabet.toInt('\uac00'));
+        assertFalse(alphabet.contains('B'));
+        Permutation perm1 = new Permutation("(A\u4e2d) (\uac00Z)", alphabet);
+        assertEquals('A', perm1.permute('\u4e2d'));
+        assertEquals('Z', perm1.invert('\uac00'));
+    }
+
+    /** Makes sure duplicates are caught in sparse alphabets too. */
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicates() {
+        new Alphabet("\u4e2dA\u4e2d");
+    }
+
+    /** Alphabets and cycles may hold supplementary characters. */
+    @Test
+    public void testSupplementaryAlphabet() {
+        Alphabet alphabet = new Alphabet("A\ud835\udd38B\ud835\udd39");
+        assertEquals(4, alphabet.size());
+        assertFalse(alphabet.bmp());
+        assertEquals(1, alphabet.toIndex(0x1d538));
+        assertEquals(0x1d539, alphabet.toCodePoint(3));
+        assertEquals(2, alphabet.toInt('B'));
+        Permutation perm1 =
+            new Permutation("(A\ud835\udd39) (B\ud835\udd38)", alphabet);
+        assertEquals(3, perm1.permute(0));
+        assertEquals(2, perm1.invert(1));
+        assertTrue(new Alphabet("AB").bmp());
+    }
+
+    /** The hashed index finds every character of a large sparse
+     *  alphabet and nothing else. */
+    @Test
+    public void testLargeSparseAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int cp = 0x100; cp < Character.MAX_CODE_POINT; cp += 251) {
+            if (!Character.isSurrogate((char) cp) || cp > 0xffff) {
+                chars.appendCodePoint(cp);
+            }
+        }
+        Alphabet alphabet = new Alphabet(chars.toString());
+        for (int i = 0; i < alphabet.size(); i++) {
+            assertEquals(i, alphabet.toIndex(alphabet.toCodePoint(i)));
+            assertFalse(alphabet.containsCodePoint(
+                alphabet.toCodePoint(i) + 1));
+        }
+    }
+
+
+    @Test
+    public void testCompose() {
+        Permutation first = new Permutation("(ABC) (DE)", UPPER);
+        Permutation second = new Permutation("(AD) (BZ)", UPPER);
+        perm = first.compose(second);
+        checkPerm("compose", UPPER_STRING,
+                  "ZCDEAFGHIJKLMNOPQRSTUVWXYB");
+        perm = first.compose(first.inverse());
+        checkPerm("identity", UPPER_STRING, UPPER_STRING);
+    }
+
+    @Test
+    public void testInverse() {
+        perm = new Permutation("(ABC) (DE)", UPPER).inverse();
+        checkPerm("inverse", UPPER_STRING,
+                  "CABEDFGHIJKLMNOPQRSTUVWXYZ");
+        assertFalse(perm.involution());
+        assertTrue(new Permutation("(AB) (CD)", UPPER).involution());
+    }
+
+    @Test
+    public void testPower() {
+        Permutation base = new Permutation("(ABCDE) (XY)", UPPER);
+        perm = base.power(2);
+        checkPerm("square", UPPER_STRING,
+                  "CDEABFGHIJKLMNOPQRSTUVWXYZ");
+        perm = base.power(-1);
+        checkPerm("negative", UPPER_STRING,
+                  "EABCDFGHIJKLMNOPQRSTUVWYXZ");
+        perm = base.power(10);
+        checkPerm("period", UPPER_STRING, UPPER_STRING);
+        perm = base.power(3_000_000_000_001L);
+        checkPerm("large", UPPER_STRING,
+                  "BCDEAFGHIJKLMNOPQRSTUVWYXZ");
+    }
+
+
 }
@@ -0,0 +1,270 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A hill-climbing search for the plugboard of a message whose rotor
+ *  order and start setting are known.  Since the rotors are fixed, the
+ *  scrambler (rotors and reflector) at each message position is
+ *  computed once, using one MachineState, into a flat table; a trial
+ *  plugboard P then decrypts ciphertext letter c at position i as
+ *  P[S_i[P[c]]], and the result is scored by an NGramModel.  Each climb
+ *  starts from a random plugboard and repeatedly tries plugging,
+ *  unplugging and swapping pairs of letters, keeping any change that
+ *  improves the score, until none does.  Independent restarts run on a
+ *  fork/join pool; each reuses its plugboard and decryption buffers, so
+ *  trials allocate nothing.
+ *  @author Nhu Vu
+ */
+class PlugboardSolver {
+
+    /** A solver for CIPHERTEXT, enciphered by MACHINE with its current
+     *  rotors and setting and an unknown plugboard, scoring decryptions
+     *  with MODEL.  MACHINE is not changed. */
+    PlugboardSolver(Machine machine, String ciphertext, NGramModel model) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        if (model.alphabet().size() != _size) {
+            throw error("Model and machine alphabets differ.");
+        }
+        _model = model;
+        _cipher = new int[ciphertext.length()];
+        _scrambler = new int[_cipher.length * _size];
+        MachineSpec spec = new MachineSpec(machine);
+        MachineState state = new MachineState(machine);
+        for (int i = 0; i < _cipher.length; i++) {
+            _cipher[i] = _alphabet.toInt(ciphertext.charAt(i));
+            spec.step(state);
+            for (int p = 0; p < _size; p++) {
+                _scrambler[i * _size + p] = spec.scramble(state, p);
+            }
+        }
+    }
+
+    /** The best plugboard found by a search and its score. */
+    static final class Solution {
+
+        /** A solution with PLUGBOARD, scoring SCORE. */
+        Solution(Permutation plugboard, double score) {
+            _plugboard = plugboard;
+            _score = score;
+        }
+
+        /** Return my plugboard. */
+        Permutation plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the n-gram score of the decryption under my
+         *  plugboard. */
+        double score() {
+            return _score;
+        }
+
+        /** Plugboard. */
+        private final Permutation _plugboard;
+        /** Score of the decryption. */
+        private final double _score;
+    }
+
+    /** Return the best plugboard of at most MAXPAIRS pairs found by
+     *  RESTARTS climbs, seeded from SEED, running on POOL. */
+    Solution solve(int restarts, int maxPairs, long seed, ForkJoinPool pool) {
+        if (restarts <= 0) {
+            throw error("Must make at least one restart.");
+        }
+        if (maxPairs < 0 || maxPairs > _size / 2) {
+            throw error("Cannot plug %d pairs.", maxPairs);
+        }
+        Climb best = pool.invoke(new Restarts(maxPairs, seed, 0, restarts));
+        return new Solution(new Permutation(best._plugboard, _alphabet),
+                            best._best);
+    }
+
+    /** Return the best plugboard of at most MAXPAIRS pairs found by
+     *  RESTARTS climbs, seeded from SEED, running on the common pool. */
+    Solution solve(int restarts, int maxPairs, long seed) {
+        return solve(restarts, maxPairs, seed, ForkJoinPool.commonPool());
+    }
+
+    /** Return the score of the decryption under plugboard PLUGBOARD
+     *  (a table of alphabet indices), leaving the decryption in PLAIN,
+     *  which must be as long as the ciphertext. */
+    double score(int[] plugboard, int[] plain) {
+        for (int i = 0; i < _cipher.length; i++) {
+            int p = _scrambler[i * _size + plugboard[_cipher[i]]];
+            plain[i] = plugboard[p];
+        }
+        return _model.score(plain, _cipher.length);
+    }
+
+    /** The climbs numbered [START, END), returning the best. */
+    private class Restarts extends RecursiveTask<Climb> {
+
+        /** Climbs START..END-1 with at most MAXPAIRS pairs, seeded from
+         *  SEED. */
+        Restarts(int maxPairs, long seed, int start, int end) {
+            _maxPairs = maxPairs;
+            _seed = seed;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected Climb compute() {
+            if (_end - _start > 1) {
+                int mid = (_start + _end) >>> 1;
+                Restarts left = new Restarts(_maxPairs, _seed, _start, mid);
+                left.fork();
+                Climb right =
+                    new Restarts(_maxPairs, _seed, mid, _end).compute();
+                Climb result = left.join();
+                return right._best > result._best ? right : result;
+            }
+            Climb climb = new Climb(_maxPairs);
+            climb.run(new Random(_seed + _start));
+            return climb;
+        }
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+        /** Largest number of pairs plugged. */
+        private final int _maxPairs;
+        /** Seed of the random starting plugboards. */
+        private final long _seed;
+        /** First climb. */
+        private final int _start;
+        /** Climb just past those made. */
+        private final int _end;
+    }
+
+    /** One hill climb, with its working buffers. */
+    private class Climb {
+
+        /** A climb plugging at most MAXPAIRS pairs. */
+        Climb(int maxPairs) {
+            _maxPairs = maxPairs;
+            _plugboard = new int[_size];
+            _plain = new int[_cipher.length];
+        }
+
+        /** Climb from a random plugboard drawn from RANDOM until no
+         *  single change improves the score. */
+        void run(Random random) {
+            for (int a = 0; a < _size; a++) {
+                _plugboard[a] = a;
+            }
+            _pairs = 0;
+            int target = random.nextInt(_maxPairs + 1);
+            while (_pairs < target) {
+                int a = random.nextInt(_size), b = random.nextInt(_size);
+                if (a != b && _plugboard[a] == a && _plugboard[b] == b) {
+                    plug(a, b);
+                }
+            }
+            _best = score(_plugboard, _plain);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _size; a++) {
+                    for (int b = a + 1; b < _size; b++) {
+                        if (tryChange(a, b)) {
+                            improved = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Try the change of the plugboard that joins A and B (or parts
+         *  them, if they are already joined), keeping it and returning
+         *  true iff it improves the score. */
+        private boolean tryChange(int a, int b) {
+            int a1 = _plugboard[a], b1 = _plugboard[b];
+            int pairs = _pairs;
+            if (a1 == b) {
+                unplug(a);
+            } else {
+                unplug(a);
+                unplug(b);
+                if (_pairs >= _maxPairs) {
+                    restore(a, a1, b, b1, pairs);
+                    return false;
+                }
+                plug(a, b);
+                if (a1 != a && b1 != b) {
+                    plug(a1, b1);
+                }
+            }
+            double score = score(_plugboard, _plain);
+            if (score > _best) {
+                _best = score;
+                return true;
+            }
+            restore(a, a1, b, b1, pairs);
+            return false;
+        }
+
+        /** Undo a change to letters A and B, which were plugged to A1
+         *  and B1, when PAIRS pairs were plugged. */
+        private void restore(int a, int a1, int b, int b1, int pairs) {
+            unplug(a);
+            unplug(b);
+            unplug(a1);
+            unplug(b1);
+            _plugboard[a] = a1;
+            _plugboard[a1] = a;
+            _plugboard[b] = b1;
+            _plugboard[b1] = b;
+            _pairs = pairs;
+        }
+
+        /** Join letters A and B, both unplugged. */
+        private void plug(int a, int b) {
+            _plugboard[a] = b;
+            _plugboard[b] = a;
+            _pairs += 1;
+        }
+
+        /** Unplug letter A and its partner, if it has one. */
+        private void unplug(int a) {
+            int b = _plugboard[a];
+            if (b != a) {
+                _plugboard[a] = a;
+                _plugboard[b] = b;
+                _pairs -= 1;
+            }
+        }
+
+        /** Largest number of pairs plugged. */
+        private final int _maxPairs;
+        /** Current plugboard, as a table of alphabet indices. */
+        private final int[] _plugboard;
+        /** Decryption under _plugboard. */
+        private final int[] _plain;
+        /** Number of pairs plugged in _plugboard. */
+        private int _pairs;
+        /** Score of the decryption under _plugboard. */
+        private double _best;
+    }
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Model scoring decryptions. */
+    private final NGramModel _model;
+
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Scrambler table at each position: entry i * size + p is the
+     *  output of the rotors and reflector for input p at position i. */
+    private final int[] _scrambler;
+
+}
@@ -0,0 +1,48 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver class.
+ *  @author Nhu Vu
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Plugboard of the test key. */
+    private static final String PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the test machine, at the start of the message, with
+     *  plugboard PLUGBOARD. */
+    private static Machine machine(String plugboard) {
+        Machine machine = RotorSearchTest.smallMachine();
+        machine.insertRotors(new String[] { "B", "IV", "I", "III" });
+        machine.setRotors("QDM");
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        return machine;
+    }
+
+    @Test
+    public void testSolve() {
+        String cipher = machine(PLUGBOARD).convert(RotorSearchTest.ENGLISH);
+        NGramModel model = new NGramModel(UPPER, 3, RotorSearchTest.ENGLISH);
+        PlugboardSolver solver =
+            new PlugboardSolver(machine(""), cipher, model);
+        PlugboardSolver.Solution best = solver.solve(8, 5, 1);
+
+        Machine machine = machine("");
+        machine.setPlugboard(best.plugboard());
+        assertEquals(RotorSearchTest.ENGLISH, machine.convert(cipher));
+        Permutation truth = new Permutation(PLUGBOARD, UPPER);
+        for (int c = 0; c < UPPER.size(); c++) {
+            assertEquals(truth.permute(c), best.plugboard().permute(c));
+        }
+    }
+}
@@ -13,11 +13,22 @@ class Reflector extends FixedRotor {
         super(name, perm);
     }
 
+    /** A reflector like ROTOR, sharing its permutation and conversion
+     *  tables. */
+    Reflector(Reflector rotor) {
+        super(rotor);
+    }
+
     @Override
     boolean reflecting() {
         return true;
     }
 
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
+    }
+
     @Override
     void set(int posn) {
         if (posn != 0) {
@@ -12,6 +12,19 @@ class Rotor {
         _name = name;
         _perm = perm;
         _setting = 0;
+        _tables = perm.size() <= MAX_TABLE_SIZE
+            ? new Tables[perm.size()] : null;
+    }
+
+    /** A rotor like ROTOR, at its current setting, sharing its name,
+     *  permutation and conversion tables.  The tables depend only on the
+     *  permutation, so copies made for each message or thread need not
+     *  build them again. */
+    Rotor(Rotor rotor) {
+        _name = rotor._name;
+        _perm = rotor._perm;
+        _setting = rotor._setting;
+        _tables = rotor._tables;
     }
 
     /** Return my name. */
@@ -51,7 +64,7 @@ class Rotor {
 
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = posn;
+        _setting = _perm.wrap(posn);
     }
 
     /** Set setting() to character CPOSN. */
@@ -62,19 +75,50 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int contact = _perm.wrap(p + _setting);
-        int convert = _perm.permute(contact);
-        int exit = _perm.wrap(convert - _setting);
-        return exit;
+        if (_tables == null) {
+            return _perm.wrap(_perm.permute(p + _setting) - _setting);
+        }
+        Tables tables = _tables[_setting];
+        if (tables == null) {
+            tables = buildTables(_setting);
+        }
+        return tables._forward[p];
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int contact = _perm.wrap(e + _setting);
-        int convert = _perm.invert(contact);
-        int exit = _perm.wrap(convert - _setting);
-        return exit;
+        if (_tables == null) {
+            return _perm.wrap(_perm.invert(e + _setting) - _setting);
+        }
+        Tables tables = _tables[_setting];
+        if (tables == null) {
+            tables = buildTables(_setting);
+        }
+        return tables._backward[e];
+    }
+
+    /** Build, record and return the conversion tables for SETTING,
+     *  folding the entry and exit offsets into my permutation.  Copies
+     *  in other threads may build the same tables at once; either
+     *  result will do. */
+    private Tables buildTables(int setting) {
+        int n = size();
+        int[] forward = new int[n], backward = new int[n];
+        for (int p = 0; p < n; p++) {
+            forward[p] = _perm.wrap(_perm.permute(p + setting) - setting);
+            backward[p] = _perm.wrap(_perm.invert(p + setting) - setting);
+        }
+        Tables tables = new Tables(forward, backward);
+        _tables[setting] = tables;
+        return tables;
+    }
+
+    /** Return a new rotor like me, with my name, permutation and current
+     *  setting, sharing my conversion tables but none of my mutable
+     *  state. */
+    Rotor copy() {
+        return new Rotor(this);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -92,6 +136,12 @@ class Rotor {
         return "Rotor " + _name;
     }
 
+    /** Largest alphabet for which conversion tables are kept for each
+     *  setting.  They take memory proportional to the square of the
+     *  alphabet size, so larger rotors convert through their
+     *  permutation directly. */
+    static final int MAX_TABLE_SIZE = 256;
+
     /** My name. */
     private final String _name;
 
@@ -101,4 +151,25 @@ class Rotor {
     /** My setting. */
     private int _setting;
 
+    /** Conversion tables for each setting, built on first use and
+     *  shared with my copies, or null if my alphabet is larger than
+     *  MAX_TABLE_SIZE. */
+    private final Tables[] _tables;
+
+    /** The conversions of each contact by convertForward and
+     *  convertBackward at one setting.  The fields are final, so tables
+     *  built by one thread are seen whole by others. */
+    private static final class Tables {
+        /** Tables holding FORWARD and BACKWARD. */
+        Tables(int[] forward, int[] backward) {
+            _forward = forward;
+            _backward = backward;
+        }
+
+        /** Conversion by convertForward. */
+        private final int[] _forward;
+        /** Conversion by convertBackward. */
+        private final int[] _backward;
+    }
+
 }
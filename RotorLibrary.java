@@ -0,0 +1,180 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a machine, indexed by name.  A rotor may be
+ *  added already built, or as a source of its description in the
+ *  configuration-file format ("NAME TYPE CYCLES"), which is read and
+ *  compiled only when the rotor is first asked for.  A library of
+ *  thousands of rotors thus costs little more than its index until
+ *  rotors are inserted.  If two rotors have the same name, the later
+ *  one is used.  A library may be shared between threads.
+ *  @author Nhu Vu
+ */
+final class RotorLibrary {
+
+    /** An empty library of rotors over ALPHABET. */
+    RotorLibrary(Alphabet alphabet) {
+        _alphabet = alphabet;
+    }
+
+    /** A library of rotors over ALPHABET holding ROTORS. */
+    RotorLibrary(Alphabet alphabet, Collection<Rotor> rotors) {
+        this(alphabet);
+        for (Rotor rotor : rotors) {
+            add(rotor);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Add ROTOR. */
+    synchronized void add(Rotor rotor) {
+        put(new Entry(rotor.name(), null))._rotor = rotor;
+    }
+
+    /** Add the rotor named NAME whose description is supplied by
+     *  SOURCE when it is first needed. */
+    synchronized void add(String name, Supplier<String> source) {
+        put(new Entry(name, source));
+    }
+
+    /** Index ENTRY under its name, replacing any entry of that name,
+     *  and return it. */
+    private Entry put(Entry entry) {
+        Entry old = _entries.put(entry._name, entry);
+        if (old != null) {
+            _order.set(old._order, entry);
+            entry._order = old._order;
+        } else {
+            entry._order = _order.size();
+            _order.add(entry);
+        }
+        _all = null;
+        return entry;
+    }
+
+    /** Return the rotor named NAME, reading it if it has not been, or
+     *  null if I have none of that name. */
+    synchronized Rotor get(String name) {
+        Entry entry = _entries.get(name);
+        return entry == null ? null : load(entry);
+    }
+
+    /** Return true iff I have a rotor named NAME. */
+    synchronized boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Return the number of rotors I have. */
+    synchronized int size() {
+        return _order.size();
+    }
+
+    /** Return the number of my rotors that have been read. */
+    synchronized int loaded() {
+        return _loaded;
+    }
+
+    /** Return all my rotors in the order first added, reading any that
+     *  have not been. */
+    synchronized List<Rotor> rotors() {
+        if (_all == null) {
+            ArrayList<Rotor> all = new ArrayList<>(_order.size());
+            for (Entry entry : _order) {
+                all.add(load(entry));
+            }
+            _all = Collections.unmodifiableList(all);
+        }
+        return _all;
+    }
+
+    /** Return the rotor of ENTRY, reading it if need be. */
+    private Rotor load(Entry entry) {
+        if (entry._rotor == null) {
+            Rotor rotor = readRotor(new Scanner(entry._source.get()),
+                                    _alphabet);
+            if (!rotor.name().equals(entry._name)) {
+                throw error("rotor %s is described as %s", entry._name,
+                            rotor.name());
+            }
+            entry._rotor = rotor;
+            entry._source = null;
+            _loaded += 1;
+        }
+        return entry._rotor;
+    }
+
+    /** Return a rotor over ALPHABET, reading its description from
+     *  INPUT. */
+    static Rotor readRotor(Scanner input, Alphabet alphabet) {
+        try {
+            String name = input.next();
+            String type = input.next();
+            String cycle = "";
+            while (input.hasNext("\\(.*")) {
+                cycle += input.next();
+            }
+            Permutation perm = new Permutation(cycle, alphabet);
+            switch (type.charAt(0)) {
+            case 'M':
+                return new MovingRotor(name, perm, type.substring(1));
+            case 'N':
+                return new FixedRotor(name, perm);
+            case 'R':
+                return new Reflector(name, perm);
+            default:
+                throw error("bad rotor type for %s", name);
+            }
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** One rotor of the library. */
+    private static final class Entry {
+        /** An entry for the rotor NAME described by SOURCE. */
+        Entry(String name, Supplier<String> source) {
+            _name = name;
+            _source = source;
+        }
+
+        /** Rotor name. */
+        private final String _name;
+        /** Source of the description, until it has been read. */
+        private Supplier<String> _source;
+        /** The rotor, once read. */
+        private Rotor _rotor;
+        /** Position in RotorLibrary._order. */
+        private int _order;
+    }
+
+    /** Alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Entries by name. */
+    private final HashMap<String, Entry> _entries = new HashMap<>();
+
+    /** Entries in the order first added. */
+    private final ArrayList<Entry> _order = new ArrayList<>();
+
+    /** Every rotor, in order, once rotors() has read them all; null
+     *  after an addition. */
+    private List<Rotor> _all;
+
+    /** Number of entries read from their sources. */
+    private int _loaded;
+
+}
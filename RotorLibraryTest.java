@@ -0,0 +1,83 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.MachineTest.*;
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorLibrary class.
+ *  @author Nhu Vu
+ */
+public class RotorLibraryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a library of the naval rotors, each described lazily, that
+     *  counts the descriptions it reads in READS. */
+    private static RotorLibrary navalLibrary(AtomicInteger reads) {
+        RotorLibrary library = new RotorLibrary(UPPER);
+        for (int i = 0; i < NOTCHES.length; i += 2) {
+            String desc = NOTCHES[i] + " M" + NOTCHES[i + 1] + " "
+                + NAVALA.get(NOTCHES[i]);
+            library.add(NOTCHES[i], () -> {
+                reads.incrementAndGet();
+                return desc;
+            });
+        }
+        library.add("Beta", () -> "Beta N " + NAVALA.get("Beta"));
+        library.add("B", () -> "B R " + NAVALA.get("B"));
+        return library;
+    }
+
+    @Test
+    public void testLazy() {
+        AtomicInteger reads = new AtomicInteger();
+        RotorLibrary library = navalLibrary(reads);
+        assertEquals(10, library.size());
+        assertEquals(0, library.loaded());
+        assertTrue(library.contains("III"));
+        assertFalse(library.contains("IX"));
+        assertNull(library.get("IX"));
+
+        Rotor rotor = library.get("III");
+        assertEquals("III", rotor.name());
+        assertTrue(rotor.rotates());
+        assertSame(rotor, library.get("III"));
+        assertEquals(1, reads.get());
+        assertEquals(1, library.loaded());
+
+        Machine machine = new Machine(UPPER, 5, 3, library);
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        assertEquals(CIPHER, machine.convert(PLAIN));
+        assertEquals(5, library.loaded());
+    }
+
+    @Test
+    public void testReplaceAndOrder() {
+        RotorLibrary library = navalLibrary(new AtomicInteger());
+        library.add("I", () -> "I N " + NAVALA.get("I"));
+        assertEquals(10, library.size());
+        assertFalse(library.get("I").rotates());
+        assertEquals("I", library.rotors().get(0).name());
+        assertEquals("B", library.rotors().get(9).name());
+        assertEquals(10, library.loaded());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMisnamed() {
+        RotorLibrary library = new RotorLibrary(UPPER);
+        library.add("I", () -> "II MQ " + NAVALA.get("I"));
+        library.get("I");
+    }
+
+}
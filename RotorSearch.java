@@ -0,0 +1,273 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive ciphertext-only search over rotor orders and start
+ *  positions.  Every admissible assignment of the available rotors to
+ *  the slots of a machine (a reflector in slot 0, fixed rotors in the
+ *  slots without pawls, moving rotors in the rest) is tried at every
+ *  setting of every slot, with a given plugboard.  Each trial decrypts
+ *  the ciphertext and scores it by its index of coincidence, and the
+ *  best-scoring trials are reported.  The key space is spread over a
+ *  fork/join pool; each worker reuses one MachineState and one count
+ *  table, so trials allocate nothing.
+ *  @author Nhu Vu
+ */
+class RotorSearch {
+
+    /** A search over the rotors available to MACHINE, which also gives
+     *  the alphabet and the numbers of slots and pawls, using PLUGBOARD
+     *  in every trial. */
+    RotorSearch(Machine machine, Permutation plugboard) {
+        _alphabet = machine.alphabet();
+        _numRotors = machine.numRotors();
+        _orders = machine.rotorOrders();
+        if (_orders.isEmpty()) {
+            throw error("No admissible rotor order.");
+        }
+        _specs = new MachineSpec[_orders.size()];
+        for (int o = 0; o < _specs.length; o++) {
+            Machine trial = new Machine(_alphabet, _numRotors,
+                                        machine.numPawls(),
+                                        machine.availableRotors());
+            trial.insertRotors(_orders.get(o));
+            trial.setPlugboard(plugboard);
+            _specs[o] = new MachineSpec(trial);
+        }
+    }
+
+    /** A result of a search: a rotor order, a setting and the index of
+     *  coincidence of the decryption they give. */
+    static final class Candidate {
+
+        /** A candidate with rotors named ROTORS at SETTING, scoring
+         *  SCORE. */
+        Candidate(String[] rotors, String setting, double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the index of coincidence of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %.5f", String.join(" ", _rotors),
+                                 _setting, _score);
+        }
+
+        /** Rotor names, reflector first. */
+        private final String[] _rotors;
+        /** Rotor setting. */
+        private final String _setting;
+        /** Index of coincidence. */
+        private final double _score;
+    }
+
+    /** Return the number of rotor orders searched. */
+    int numOrders() {
+        return _orders.size();
+    }
+
+    /** Return the best K candidates for CIPHERTEXT, best first, searching
+     *  on POOL. */
+    List<Candidate> search(String ciphertext, int k, ForkJoinPool pool) {
+        if (k <= 0) {
+            throw error("Must ask for at least one candidate.");
+        }
+        int[] cipher = new int[ciphertext.length()];
+        for (int i = 0; i < cipher.length; i++) {
+            cipher[i] = _alphabet.toInt(ciphertext.charAt(i));
+        }
+        int units = _orders.size() * _alphabet.size();
+        TopK best = pool.invoke(new Search(cipher, k, 0, units));
+        return best.candidates();
+    }
+
+    /** Return the best K candidates for CIPHERTEXT, best first, searching
+     *  on the common pool. */
+    List<Candidate> search(String ciphertext, int k) {
+        return search(ciphertext, k, ForkJoinPool.commonPool());
+    }
+
+    /** The search of work units [START, END).  Unit U covers rotor order
+     *  U / size() with slot 1 at setting U % size(), and every setting of
+     *  the other slots. */
+    private class Search extends RecursiveTask<TopK> {
+
+        /** A search of units START..END-1 for the best K decryptions of
+         *  CIPHER (as alphabet indices). */
+        Search(int[] cipher, int k, int start, int end) {
+            _cipher = cipher;
+            _k = k;
+            _start = start;
+            _end = end;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (_end - _start > 1) {
+                int mid = (_start + _end) >>> 1;
+                Search left = new Search(_cipher, _k, _start, mid);
+                left.fork();
+                TopK result = new Search(_cipher, _k, mid, _end).compute();
+                result.addAll(left.join());
+                return result;
+            }
+            TopK best = new TopK(_k);
+            int size = _alphabet.size();
+            int order = _start / size;
+            MachineSpec spec = _specs[order];
+            MachineState state = spec.newState();
+            int[] start = new int[_numRotors];
+            int[] counts = new int[size];
+            start[1] = _start % size;
+            do {
+                System.arraycopy(start, 0, state.positions(), 0, _numRotors);
+                Arrays.fill(counts, 0);
+                for (int c : _cipher) {
+                    counts[spec.convert(state, c)] += 1;
+                }
+                best.add(indexOfCoincidence(counts, _cipher.length),
+                         order, start);
+            } while (nextSetting(start, size));
+            return best;
+        }
+
+        /** Serialization version. */
+        private static final long serialVersionUID = 1L;
+        /** Ciphertext as alphabet indices. */
+        private final int[] _cipher;
+        /** Number of candidates kept. */
+        private final int _k;
+        /** First unit searched. */
+        private final int _start;
+        /** Unit just past those searched. */
+        private final int _end;
+    }
+
+    /** Advance SETTINGS, the settings of all slots, to the next setting
+     *  of slots 2 and up in an alphabet of SIZE letters, returning false
+     *  once they have all wrapped around. */
+    private static boolean nextSetting(int[] settings, int size) {
+        for (int i = settings.length - 1; i >= 2; i--) {
+            settings[i] += 1;
+            if (settings[i] < size) {
+                return true;
+            }
+            settings[i] = 0;
+        }
+        return false;
+    }
+
+    /** Return the index of coincidence of a text of length LEN whose
+     *  letter counts are COUNTS. */
+    static double indexOfCoincidence(int[] counts, int len) {
+        if (len < 2) {
+            return 0.0;
+        }
+        long sum = 0;
+        for (int c : counts) {
+            sum += (long) c * (c - 1);
+        }
+        return (double) sum / ((double) len * (len - 1));
+    }
+
+    /** The best K trials seen so far, kept in primitive arrays so that
+     *  adding a trial never allocates. */
+    private class TopK {
+
+        /** An empty collection of the best K trials. */
+        TopK(int k) {
+            _scores = new double[k];
+            _orderOf = new int[k];
+            _settings = new int[k][_numRotors];
+            Arrays.fill(_scores, Double.NEGATIVE_INFINITY);
+        }
+
+        /** Record a trial of rotor order ORDER at SETTINGS scoring
+         *  SCORE, if it is among the best. */
+        void add(double score, int order, int[] settings) {
+            if (score <= _scores[_worst]) {
+                return;
+            }
+            _scores[_worst] = score;
+            _orderOf[_worst] = order;
+            System.arraycopy(settings, 0, _settings[_worst], 0, _numRotors);
+            for (int i = 0; i < _scores.length; i++) {
+                if (_scores[i] < _scores[_worst]) {
+                    _worst = i;
+                }
+            }
+        }
+
+        /** Add all trials recorded in OTHER. */
+        void addAll(TopK other) {
+            for (int i = 0; i < other._scores.length; i++) {
+                if (other._scores[i] != Double.NEGATIVE_INFINITY) {
+                    add(other._scores[i], other._orderOf[i],
+                        other._settings[i]);
+                }
+            }
+        }
+
+        /** Return my trials as candidates, best first. */
+        List<Candidate> candidates() {
+            ArrayList<Candidate> result = new ArrayList<>();
+            for (int i = 0; i < _scores.length; i++) {
+                if (_scores[i] == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                char[] setting = new char[_numRotors - 1];
+                for (int s = 1; s < _numRotors; s++) {
+                    setting[s - 1] = _alphabet.toChar(_settings[i][s]);
+                }
+                result.add(new Candidate(_orders.get(_orderOf[i]),
+                                         new String(setting), _scores[i]));
+            }
+            result.sort((a, b) -> Double.compare(b.score(), a.score()));
+            return result;
+        }
+
+        /** Score of each kept trial. */
+        private final double[] _scores;
+        /** Rotor order of each kept trial. */
+        private final int[] _orderOf;
+        /** Slot settings of each kept trial. */
+        private final int[][] _settings;
+        /** Index of the lowest score kept. */
+        private int _worst;
+    }
+
+    /** Common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Rotor names of each admissible rotor order, reflector first. */
+    private final List<String[]> _orders;
+
+    /** Spec of the machine with each rotor order. */
+    private final MachineSpec[] _specs;
+
+}
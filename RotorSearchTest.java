@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorSearch class.
+ *  @author Nhu Vu
+ */
+public class RotorSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** English plaintext, long enough for its index of coincidence to
+     *  stand out. */
+    static final String ENGLISH =
+        "SHOULDYOUASKMEWHENCETHESESTORIESWHENCETHESELEGENDSANDTRADITIONS"
+        + "WITHTHEODOURSOFTHEFORESTWITHTHEDEWANDDAMPOFMEADOWSWITHTHECURL"
+        + "INGSMOKEOFWIGWAMSWITHTHERUSHINGOFGREATRIVERSWITHTHEIRFREQUENT"
+        + "REPETITIONSANDTHEIRWILDREVERBERATIONSASOFTHUNDERINTHEMOUNTAINS";
+
+    /** Return a 4-slot, 3-pawl machine with reflector B and naval rotors
+     *  I to IV. */
+    static Machine smallMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        String[] names = { "I", "II", "III", "IV" };
+        String[] notches = { "Q", "E", "V", "J" };
+        for (int i = 0; i < names.length; i++) {
+            rotors.add(new MovingRotor(names[i],
+                    new Permutation(NAVALA.get(names[i]), UPPER),
+                    notches[i]));
+        }
+        return new Machine(UPPER, 4, 3, rotors);
+    }
+
+    @Test
+    public void testOrders() {
+        Permutation plugboard = new Permutation("", UPPER);
+        assertEquals(24, new RotorSearch(smallMachine(), plugboard)
+                     .numOrders());
+        assertEquals(2 * 2 * 8 * 7 * 6,
+                     new RotorSearch(MachineTest.navalMachine(), plugboard)
+                     .numOrders());
+    }
+
+    @Test
+    public void testFindsKey() {
+        Machine machine = smallMachine();
+        machine.insertRotors(new String[] { "B", "IV", "I", "III" });
+        machine.setRotors("QDM");
+        Permutation plugboard = new Permutation("", UPPER);
+        machine.setPlugboard(plugboard);
+        String cipher = machine.convert(ENGLISH);
+
+        List<RotorSearch.Candidate> best =
+            new RotorSearch(smallMachine(), plugboard).search(cipher, 5);
+        assertEquals(5, best.size());
+        assertArrayEquals(new String[] { "B", "IV", "I", "III" },
+                          best.get(0).rotors());
+        assertEquals("QDM", best.get(0).setting());
+        assertTrue(best.get(0).score() > best.get(1).score());
+    }
+
+    @Test
+    public void testIndexOfCoincidence() {
+        assertEquals(1.0, RotorSearch.indexOfCoincidence(new int[] {4}, 4),
+                     1e-9);
+        assertEquals(0.0, RotorSearch.indexOfCoincidence(
+                         new int[] {1, 1, 1, 1}, 4), 1e-9);
+    }
+
+}
@@ -0,0 +1,21 @@
+package enigma;
+
+/** A LaneEngine that converts one lane at a time, for use where the
+ *  Vector API is unavailable.
+ *  @author Nhu Vu
+ */
+final class ScalarLanes extends LaneEngine {
+
+    /** An engine of LANES lanes converting as SPEC does. */
+    ScalarLanes(MachineSpec spec, int lanes) {
+        super(spec, lanes);
+    }
+
+    @Override
+    void convert(int[] text, int len) {
+        for (int t = 0; t < len; t++) {
+            convertScalar(text, t * _lanes, 0, _lanes);
+        }
+    }
+
+}
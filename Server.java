@@ -0,0 +1,371 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running conversion service.  The machine configuration is
+ *  loaded once, and clients connect over TCP or a Unix-domain socket to
+ *  send any number of requests, each a settings line and its message
+ *  lines in the input format of Main, encoded in UTF-8.
+ *
+ *  A request is framed as a four-byte big-endian byte count followed by
+ *  that many bytes.  Its response is a series of frames, each a tag
+ *  byte and a four-byte big-endian byte count followed by that many
+ *  bytes: DATA frames carry the converted text in the output format of
+ *  Main, and the response ends with an END frame (count 0) or, if the
+ *  request is in error, an ERROR frame holding the message.
+ *
+ *  One thread serves every connection with a non-blocking selector.
+ *  Each connection has fixed input and output buffers, and input is
+ *  only converted while the output buffer has room for the result, so
+ *  a client that does not read its responses stops being read from,
+ *  and TCP flow control pushes back on it.
+ *  @author Nhu Vu
+ */
+class Server implements Closeable {
+
+    /** Tag of a frame of converted text. */
+    static final byte DATA = 'D';
+
+    /** Tag of the frame ending a successful response. */
+    static final byte END = 'E';
+
+    /** Tag of the frame ending a failed response. */
+    static final byte ERROR = 'X';
+
+    /** Size in bytes of each connection's input and output buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A server converting with copies of MACHINE, listening on
+     *  ADDRESS, which is an InetSocketAddress or a
+     *  UnixDomainSocketAddress.  Messages whose key can be cached are
+     *  converted through KEYSTREAMS, if it is not null, and the work
+     *  done for every connection is recorded in METRICS. */
+    Server(Machine machine, SocketAddress address,
+           KeystreamCache keystreams, Metrics metrics) throws IOException {
+        _machine = machine;
+        _keystreams = keystreams;
+        _metrics = metrics;
+        _channel = ServerSocketChannel.open(
+            address instanceof UnixDomainSocketAddress
+            ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET);
+        _channel.bind(address);
+        _channel.configureBlocking(false);
+        _selector = Selector.open();
+        _channel.register(_selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /** A server converting with copies of MACHINE, listening on
+     *  ADDRESS, without a keystream cache and keeping its metrics to
+     *  itself. */
+    Server(Machine machine, SocketAddress address) throws IOException {
+        this(machine, address, null, new Metrics());
+    }
+
+    /** Return the address described by SPEC: unix:PATH for a
+     *  Unix-domain socket, or HOST:PORT. */
+    static SocketAddress address(String spec) {
+        if (spec.startsWith(UNIX_PREFIX)) {
+            return UnixDomainSocketAddress.of(
+                spec.substring(UNIX_PREFIX.length()));
+        }
+        int colon = spec.lastIndexOf(':');
+        try {
+            return new InetSocketAddress(spec.substring(0, colon),
+                         Integer.parseInt(spec.substring(colon + 1)));
+        } catch (IndexOutOfBoundsException | IllegalArgumentException excp) {
+            throw error("bad server address: %s", spec);
+        }
+    }
+
+    /** Return the address I am listening on. */
+    SocketAddress address() throws IOException {
+        return _channel.getLocalAddress();
+    }
+
+    /** Serve connections until closed. */
+    void serve() throws IOException {
+        SocketAddress address = _channel.getLocalAddress();
+        try {
+            while (!_closed) {
+                _selector.select();
+                for (SelectionKey key : _selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).ready(key);
+                    }
+                }
+                _selector.selectedKeys().clear();
+            }
+        } finally {
+            for (SelectionKey key : _selector.keys()) {
+                key.channel().close();
+            }
+            _selector.close();
+            _channel.close();
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(
+                    ((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+    }
+
+    /** Stop serving.  May be called from any thread; serve returns once
+     *  it notices. */
+    @Override
+    public void close() {
+        _closed = true;
+        _selector.wakeup();
+    }
+
+    /** Accept a pending connection, if there is one. */
+    private void accept() throws IOException {
+        SocketChannel channel = _channel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(_selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel));
+    }
+
+    /** The state of one client connection. */
+    private class Connection {
+
+        /** A connection over CHANNEL. */
+        Connection(SocketChannel channel) {
+            _client = channel;
+            _session = new Session(_machine.copy(), StandardCharsets.UTF_8,
+                                   _keystreams, _metrics);
+        }
+
+        /** Handle the readiness of my channel, whose key is KEY. */
+        void ready(SelectionKey key) {
+            try {
+                if (key.isReadable() && _client.read(_in) < 0) {
+                    _eof = true;
+                }
+                if (key.isWritable()) {
+                    flush();
+                }
+                while (pump()) {
+                    flush();
+                    if (_out.position() > 0) {
+                        break;
+                    }
+                }
+                flush();
+                if (_eof && _out.position() == 0) {
+                    _client.close();
+                    return;
+                }
+                int ops = _out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+                if (!_eof && _in.hasRemaining()) {
+                    ops |= SelectionKey.OP_READ;
+                }
+                key.interestOps(ops);
+            } catch (IOException excp) {
+                key.cancel();
+                try {
+                    _client.close();
+                } catch (IOException ignored) {
+                    return;
+                }
+            }
+        }
+
+        /** Write as much buffered output as the channel will take. */
+        private void flush() throws IOException {
+            _out.flip();
+            _client.write(_out);
+            _out.compact();
+        }
+
+        /** Convert buffered input while there is room for its output,
+         *  returning true iff stopped for lack of room. */
+        private boolean pump() throws IOException {
+            _in.flip();
+            try {
+                while (true) {
+                    if (_remaining < 0) {
+                        if (_in.remaining() < Integer.BYTES) {
+                            return false;
+                        }
+                        _remaining = _in.getInt();
+                        if (_remaining < 0) {
+                            throw new IOException("bad frame length");
+                        }
+                    } else if (_remaining == 0) {
+                        if (_out.remaining() < RESERVE) {
+                            return true;
+                        }
+                        endRequest();
+                    } else {
+                        int room = (_out.remaining() - RESERVE) / MAX_BYTES;
+                        int n = (int) Math.min(Math.min(_in.remaining(),
+                                                        _remaining), room);
+                        if (room <= 0) {
+                            return true;
+                        } else if (n <= 0 || !convert(n)) {
+                            return false;
+                        }
+                    }
+                }
+            } finally {
+                _in.compact();
+            }
+        }
+
+        /** Convert up to the next N bytes of request body from _in,
+         *  returning false if none could be used because they end in
+         *  part of a character. */
+        private boolean convert(int n) {
+            int limit = _in.limit(), start = _in.position();
+            _in.limit(start + n);
+            CoderResult result =
+                _decoder.decode(_in, _chars, n == _remaining);
+            _in.limit(limit);
+            if (_in.position() == start && !result.isError()) {
+                return false;
+            }
+            _remaining -= _in.position() - start;
+            _chars.flip();
+            if (!_failed) {
+                try {
+                    if (result.isError()) {
+                        throw error("malformed UTF-8 in request");
+                    }
+                    _session.convert(_chars, _converted);
+                } catch (EnigmaException excp) {
+                    fail(excp);
+                }
+            }
+            _chars.clear();
+            emit(DATA, _converted);
+            if (result.isError()) {
+                _remaining -= start + n - _in.position();
+                _in.position(start + n);
+            }
+            return true;
+        }
+
+        /** Finish the request whose body has all been read. */
+        private void endRequest() {
+            if (!_failed) {
+                try {
+                    _session.finish(_converted);
+                    emit(DATA, _converted);
+                    emit(END, _converted);
+                } catch (EnigmaException excp) {
+                    fail(excp);
+                }
+            }
+            _decoder.reset();
+            _session.reset();
+            _failed = false;
+            _remaining = -1;
+        }
+
+        /** End the current response with an error frame reporting
+         *  EXCP, and ignore the rest of the request. */
+        private void fail(EnigmaException excp) {
+            _converted.clear();
+            String msg = excp.getMessage();
+            msg = msg.substring(0, Math.min(msg.length(), MAX_MESSAGE));
+            _converted.put(msg.getBytes(StandardCharsets.UTF_8));
+            emit(ERROR, _converted);
+            _failed = true;
+        }
+
+        /** Append a frame tagged TAG holding the UTF-8 text in TEXT,
+         *  which is in write mode and is cleared, to the output buffer.
+         *  Does nothing if TAG is DATA and TEXT is empty. */
+        private void emit(byte tag, ByteBuffer text) {
+            text.flip();
+            if (tag != DATA || text.hasRemaining()) {
+                _out.put(tag);
+                _out.putInt(text.remaining());
+                _out.put(text);
+            }
+            text.clear();
+        }
+
+        /** Client channel. */
+        private final SocketChannel _client;
+        /** Conversion state of the current request. */
+        private final Session _session;
+        /** Bytes read and not yet converted. */
+        private final ByteBuffer _in = ByteBuffer.allocate(BUFFER_SIZE);
+        /** Response bytes not yet written. */
+        private final ByteBuffer _out = ByteBuffer.allocate(BUFFER_SIZE);
+        /** Request characters decoded from _in. */
+        private final CharBuffer _chars = CharBuffer.allocate(BUFFER_SIZE);
+        /** Converted text waiting to be framed into _out. */
+        private final ByteBuffer _converted =
+            ByteBuffer.allocate(Session.MAX_BYTES * BUFFER_SIZE);
+        /** Decoder of request bodies. */
+        private final CharsetDecoder _decoder =
+            StandardCharsets.UTF_8.newDecoder();
+        /** Bytes of the current request body still to be read, or -1
+         *  while reading a request header. */
+        private long _remaining = -1;
+        /** True iff the current request has failed. */
+        private boolean _failed;
+        /** True once the client has shut down its output. */
+        private boolean _eof;
+    }
+
+    /** Prefix of the address of a Unix-domain socket. */
+    private static final String UNIX_PREFIX = "unix:";
+
+    /** Largest number of UTF-8 bytes output per request byte. */
+    private static final int MAX_BYTES = Session.MAX_BYTES;
+
+    /** Longest error message sent, in characters. */
+    private static final int MAX_MESSAGE = 1 << 10;
+
+    /** Output buffer room kept for the frames that end a response: a
+     *  final DATA frame of one character, an END frame, or an ERROR
+     *  frame. */
+    private static final int RESERVE =
+        3 * (1 + Integer.BYTES) + MAX_BYTES + 3 * MAX_MESSAGE;
+
+    /** Machine whose copies convert each connection's requests. */
+    private final Machine _machine;
+
+    /** Cache of keystreams shared by every connection, or null. */
+    private final KeystreamCache _keystreams;
+
+    /** Counters describing the work done for every connection. */
+    private final Metrics _metrics;
+
+    /** Listening channel. */
+    private final ServerSocketChannel _channel;
+
+    /** Selector of every channel served. */
+    private final Selector _selector;
+
+    /** True once close has been called. */
+    private volatile boolean _closed;
+
+}
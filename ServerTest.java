@@ -0,0 +1,226 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the Server class, run over the
+ *  loopback interface and a Unix-domain socket.
+ *  @author Nhu Vu
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Directory for Unix-domain sockets. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Settings line of the sample message. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n";
+
+    /** Start a server of the naval machine on ADDRESS, returning its
+     *  address. */
+    private SocketAddress start(SocketAddress address) throws IOException {
+        return start(address, null, new Metrics());
+    }
+
+    /** Start a server of the naval machine on ADDRESS, converting
+     *  through KEYSTREAMS and recording its work in METRICS, returning
+     *  its address. */
+    private SocketAddress start(SocketAddress address,
+                                KeystreamCache keystreams, Metrics metrics)
+        throws IOException {
+        _server = new Server(MachineTest.navalMachine(), address,
+                             keystreams, metrics);
+        _thread = new Thread(() -> {
+            try {
+                _server.serve();
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        _thread.start();
+        return _server.address();
+    }
+
+    /** Stop the server. */
+    @After
+    public void stop() throws InterruptedException {
+        if (_server != null) {
+            _server.close();
+            _thread.join();
+        }
+    }
+
+    /** Send REQUEST on CHANNEL. */
+    private static void send(SocketChannel channel, byte[] request)
+        throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        header.putInt(request.length).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        ByteBuffer body = ByteBuffer.wrap(request);
+        while (body.hasRemaining()) {
+            channel.write(body);
+        }
+    }
+
+    /** Read N bytes from CHANNEL. */
+    private static ByteBuffer read(SocketChannel channel, int n)
+        throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(n);
+        while (result.hasRemaining()) {
+            if (channel.read(result) < 0) {
+                throw new IOException("connection closed");
+            }
+        }
+        return result.flip();
+    }
+
+    /** Return the response read from CHANNEL: its text, or the error
+     *  message prefixed by "ERROR: ". */
+    private static String response(SocketChannel channel)
+        throws IOException {
+        StringBuilder result = new StringBuilder();
+        while (true) {
+            ByteBuffer header = read(channel, 1 + Integer.BYTES);
+            byte tag = header.get();
+            ByteBuffer body = read(channel, header.getInt());
+            String text = StandardCharsets.UTF_8.decode(body).toString();
+            if (tag == Server.END) {
+                return result.toString();
+            } else if (tag == Server.ERROR) {
+                return "ERROR: " + text;
+            }
+            assertEquals(Server.DATA, tag);
+            result.append(text);
+        }
+    }
+
+    /** Return the response to REQUEST on CHANNEL. */
+    private static String request(SocketChannel channel, String request)
+        throws IOException {
+        send(channel, request.getBytes(StandardCharsets.UTF_8));
+        return response(channel);
+    }
+
+    @Test
+    public void testSample() throws IOException {
+        SocketAddress address =
+            start(new InetSocketAddress("127.0.0.1", 0));
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                         request(channel, SETTINGS + "FROM HIS SHOULDER"
+                                 + " HIAWATHA\n"));
+            assertEquals("FROMH ISSHO\n\nULDER HIAWA THA\n",
+                         request(channel, SETTINGS + "QVPQSOKOIL\n\n"
+                                 + "PUBKJZPISFXDW"));
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        SocketAddress address =
+            start(new InetSocketAddress("127.0.0.1", 0));
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            assertEquals("ERROR: Must begin with settings line",
+                         request(channel, "HELLO\n"));
+            assertTrue(request(channel, SETTINGS + "HELLO1\n")
+                       .startsWith("ERROR: "));
+            send(channel, new byte[] { '*', ' ', (byte) 0xff, '\n' });
+            assertEquals("ERROR: malformed UTF-8 in request",
+                         response(channel));
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                         request(channel, SETTINGS
+                                 + "FROMHISSHOULDERHIAWATHA\n"));
+        }
+    }
+
+    @Test
+    public void testLargeRequest() throws Exception {
+        SocketAddress address =
+            start(new InetSocketAddress("127.0.0.1", 0));
+        String msg = MachineTest.randomMessage(2_000_000);
+        Machine machine = MachineTest.sampleMachine();
+        String expected = machine.convert(msg);
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            Thread writer = new Thread(() -> {
+                try {
+                    send(channel, (SETTINGS + msg).getBytes(
+                             StandardCharsets.UTF_8));
+                } catch (IOException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            });
+            writer.start();
+            String result = response(channel);
+            writer.join();
+            assertEquals(expected, result.replace(" ", "").trim());
+        }
+    }
+
+    @Test
+    public void testUnixSocket() throws IOException {
+        SocketAddress address = start(UnixDomainSocketAddress.of(
+            folder.getRoot().toPath().resolve("enigma.sock")));
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                         request(channel, SETTINGS
+                                 + "FROMHISSHOULDERHIAWATHA\n"));
+        }
+    }
+
+    @Test
+    public void testSharedMetricsAndKeystreams() throws IOException {
+        KeystreamCache keystreams = new KeystreamCache();
+        Metrics metrics = new Metrics();
+        SocketAddress address =
+            start(new InetSocketAddress("127.0.0.1", 0), keystreams, metrics);
+        for (int i = 0; i < 2; i++) {
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n",
+                             request(channel, SETTINGS
+                                     + "FROMHISSHOULDERHIAWATHA\n"));
+            }
+        }
+        assertEquals(2, metrics.getMessagesProcessed());
+        assertEquals(2 * "FROMHISSHOULDERHIAWATHA".length(),
+                     metrics.getCharactersConverted());
+        assertEquals(1, keystreams.misses());
+        assertEquals(1, keystreams.hits());
+    }
+
+    @Test
+    public void testAddress() {
+        assertEquals(new InetSocketAddress("localhost", 7000),
+                     Server.address("localhost:7000"));
+        assertEquals(UnixDomainSocketAddress.of("/tmp/e.sock"),
+                     Server.address("unix:/tmp/e.sock"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadAddress() {
+        Server.address("localhost");
+    }
+
+    /** Server under test. */
+    private Server _server;
+    /** Thread running _server. */
+    private Thread _thread;
+}
@@ -0,0 +1,240 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** The conversion of one stream of settings and message lines, in the
+ *  input format of Main, fed in as many pieces as the caller likes.
+ *  This is the one parser of that format: Main's stream, batch and
+ *  memory-mapped modes and the Server all convert through it.
+ *
+ *  Output is written in the format of Main, as bytes in a given
+ *  charset, to caller-supplied buffers, and input is consumed only
+ *  while there is room for its output, so the caller decides how much
+ *  is buffered.  Letters may be supplementary characters, whose
+ *  surrogate pairs may be split between pieces of input.  When the
+ *  alphabet is small enough, the letters of each piece of a message
+ *  line are gathered into an EncodedText, converted together (through
+ *  a KeystreamCache, if one is given and the key can be cached), and
+ *  written straight from their indices by a GroupWriter.
+ *  @author Nhu Vu
+ */
+final class Session {
+
+    /** Largest number of output bytes produced by one input character:
+     *  a group-separating space and a letter of up to four bytes. */
+    static final int MAX_BYTES = 5;
+
+    /** Longest settings line accepted. */
+    static final int MAX_SETTINGS = 1 << 12;
+
+    /** A session converting with MACHINE, which it sets up as settings
+     *  lines arrive, writing in CHARSET.  Encoded messages whose key
+     *  can be cached are converted through KEYSTREAMS, if it is not
+     *  null, and the work done is recorded in METRICS. */
+    Session(Machine machine, Charset charset, KeystreamCache keystreams,
+            Metrics metrics) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _writer = new GroupWriter(_alphabet, charset);
+        if (_writer.maxBytes() > MAX_BYTES) {
+            throw error("Letters take too many bytes in %s", charset);
+        }
+        _encoded = EncodedText.fits(_alphabet)
+            ? new EncodedText(_alphabet, RUN_SIZE) : null;
+        _keystreams = _encoded == null ? null : keystreams;
+        _metrics = metrics;
+    }
+
+    /** A session converting with MACHINE, which it sets up as settings
+     *  lines arrive, writing in UTF-8 and keeping its metrics to
+     *  itself. */
+    Session(Machine machine) {
+        this(machine, StandardCharsets.UTF_8, null, new Metrics());
+    }
+
+    /** Convert characters from IN into OUT until IN is empty or OUT may
+     *  not have room for the output of another character; at most
+     *  OUT.remaining() / MAX_BYTES characters are consumed. */
+    void convert(CharBuffer in, ByteBuffer out) {
+        long start = Metrics.now();
+        int room = out.remaining() / MAX_BYTES, letters = 0;
+        while (in.hasRemaining() && room > 0) {
+            char ch = in.get();
+            room -= 1;
+            if (_high != 0 && !Character.isLowSurrogate(ch)) {
+                throw error("Unpaired surrogate in message");
+            } else if (ch == '\n') {
+                if (_inSettings) {
+                    startMessage();
+                } else {
+                    flush(out);
+                    _writer.newline(out);
+                }
+                _lineStart = true;
+            } else if (_inSettings) {
+                if (_settings.length() == MAX_SETTINGS) {
+                    throw error("Settings line too long");
+                }
+                _settings.append(ch);
+            } else if (Character.isWhitespace(ch)) {
+                continue;
+            } else if (_lineStart && ch == '*') {
+                _settings.setLength(0);
+                _settings.append(ch);
+                _inSettings = true;
+                _lineStart = false;
+            } else if (!_configured) {
+                throw error("Must begin with settings line");
+            } else if (_encoded != null) {
+                _lineStart = false;
+                if (_encoded.length() == _encoded.capacity()) {
+                    flush(out);
+                }
+                _encoded.append(ch);
+            } else if (Character.isHighSurrogate(ch)) {
+                _lineStart = false;
+                _high = ch;
+            } else {
+                _lineStart = false;
+                int cp = ch;
+                if (_high != 0) {
+                    cp = Character.toCodePoint(_high, ch);
+                    _high = 0;
+                }
+                _writer.letter(_machine.convert(_alphabet.toIndex(cp)), out);
+                letters += 1;
+            }
+        }
+        flush(out);
+        if (letters > 0) {
+            _metrics.converted(letters, Metrics.now() - start);
+        }
+    }
+
+    /** Convert the letters gathered in _encoded and write them to OUT,
+     *  leaving _encoded empty. */
+    private void flush(ByteBuffer out) {
+        if (_encoded == null || _encoded.length() == 0) {
+            return;
+        }
+        int len = _encoded.length();
+        long start = Metrics.now();
+        if (_keys != null) {
+            _keys.convert(_encoded, 0, len);
+        } else {
+            _machine.convert(_encoded, 0, len);
+        }
+        long converted = Metrics.now();
+        _metrics.converted(len, converted - start);
+        _writer.letters(_encoded, 0, len, out);
+        _encoded.clear();
+        _metrics.output(Metrics.now() - converted);
+    }
+
+    /** Set up my machine from the settings line just read, ending the
+     *  previous message. */
+    private void startMessage() {
+        endMessage();
+        long now = Metrics.now();
+        Main.setUp(_machine, _settings.toString());
+        if (_keystreams != null) {
+            KeystreamCache.Keystream keys = _keystreams.get(_machine);
+            _keys = keys == null ? null : keys.cursor();
+        }
+        _metrics.parsed(Metrics.now() - now);
+        _started = now;
+        _configured = true;
+        _inSettings = false;
+    }
+
+    /** Record the end of the current message, if any. */
+    private void endMessage() {
+        if (_started != NO_MESSAGE) {
+            _metrics.message(Metrics.now() - _started);
+            _started = NO_MESSAGE;
+        }
+    }
+
+    /** End the stream, writing at most one final byte to OUT, and make
+     *  me ready for a new stream. */
+    void finish(ByteBuffer out) {
+        if (_high != 0) {
+            throw error("Unpaired surrogate in message");
+        } else if (_inSettings) {
+            startMessage();
+        } else if (!_lineStart) {
+            _writer.newline(out);
+        }
+        endMessage();
+        reset();
+    }
+
+    /** Abandon the current stream, making me ready for a new one. */
+    void reset() {
+        _settings.setLength(0);
+        _configured = false;
+        _inSettings = false;
+        _lineStart = true;
+        _high = 0;
+        _keys = null;
+        _started = NO_MESSAGE;
+        _writer.reset();
+        if (_encoded != null) {
+            _encoded.clear();
+        }
+    }
+
+    /** Most letters gathered before they are converted and written. */
+    private static final int RUN_SIZE = 1 << 12;
+
+    /** Start time of no message. */
+    private static final long NO_MESSAGE = Long.MIN_VALUE;
+
+    /** Machine converting messages. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Writer of converted letters. */
+    private final GroupWriter _writer;
+
+    /** Letters of the current message line not yet converted, or null
+     *  if the alphabet is too large to encode. */
+    private final EncodedText _encoded;
+
+    /** Cache of keystreams, or null. */
+    private final KeystreamCache _keystreams;
+
+    /** Counters describing the work done. */
+    private final Metrics _metrics;
+
+    /** Settings line read so far. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** Cursor converting the current message from its cached
+     *  keystream, or null. */
+    private KeystreamCache.Cursor _keys;
+
+    /** Time at which the current message started, or NO_MESSAGE. */
+    private long _started = NO_MESSAGE;
+
+    /** True once a settings line has been applied. */
+    private boolean _configured;
+
+    /** True while reading a settings line. */
+    private boolean _inSettings;
+
+    /** True at the start of an input line. */
+    private boolean _lineStart = true;
+
+    /** The high surrogate starting a letter whose low surrogate has
+     *  not yet arrived, or 0. */
+    private char _high;
+
+}
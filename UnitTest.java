@@ -11,7 +11,22 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      ConfigCacheTest.class,
+                                      RotorSearchTest.class,
+                                      BombeTest.class,
+                                      PlugboardSolverTest.class,
+                                      NGramModelTest.class,
+                                      MetricsTest.class,
+                                      LaneEngineTest.class,
+                                      EncodedTextTest.class,
+                                      ServerTest.class,
+                                      MachineProcessorTest.class,
+                                      KeystreamCacheTest.class,
+                                      RotorLibraryTest.class,
+                                      ConfigIndexTest.class,
+                                      MainTest.class));
     }
 
 }
@@ -0,0 +1,91 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.*;
+
+/** A LaneEngine that steps and converts as many lanes at once as fit in
+ *  the platform's preferred int vector.  Rotor stepping is a gather from
+ *  the stepping tables of MachineSpec, and each rotor and plugboard
+ *  lookup is a gather from the wiring table at the lanes' contacts.
+ *  Lanes beyond the last whole vector are converted by the scalar loop.
+ *  Requires the jdk.incubator.vector module.
+ *  @author Nhu Vu
+ */
+final class VectorLanes extends LaneEngine {
+
+    /** An engine of LANES lanes converting as SPEC does. */
+    VectorLanes(MachineSpec spec, int lanes) {
+        super(spec, lanes);
+        _index = new int[SPECIES.length()];
+    }
+
+    @Override
+    void convert(int[] text, int len) {
+        int bound = SPECIES.loopBound(_lanes);
+        for (int t = 0; t < len; t++) {
+            int base = t * _lanes;
+            for (int k = 0; k < bound; k += SPECIES.length()) {
+                step(k);
+                convertVector(text, base, k);
+            }
+            convertScalar(text, base, bound, _lanes);
+        }
+    }
+
+    /** Advance the rotors of the vector of lanes starting at lane K, by
+     *  gathering from each slot's stepping table at twice the lanes'
+     *  settings plus the notch flags of the slot to the right. */
+    private void step(int k) {
+        int last = _numRotors - 1;
+        for (int i = _first; i <= last; i++) {
+            IntVector index = IntVector.fromArray(SPECIES, _positions[i], k)
+                .lanewise(LSHL, 1);
+            if (i < last) {
+                index = index.add(IntVector.fromArray(SPECIES, _notches[i + 1],
+                                                      0, _positions[i + 1],
+                                                      k));
+            }
+            index.intoArray(_index, 0);
+            IntVector.fromArray(SPECIES, _next[i], 0, _index, 0)
+                .intoArray(_positions[i], k);
+        }
+    }
+
+    /** Convert the characters of the vector of lanes starting at lane K
+     *  at TEXT[BASE + K], after stepping. */
+    private void convertVector(int[] text, int base, int k) {
+        int last = _numRotors - 1;
+        IntVector p = IntVector.fromArray(SPECIES, _plugboard, 0,
+                                          text, base + k);
+        for (int i = last; i >= 0; i--) {
+            p = shift(_forward[i], p, _positions[i], k);
+        }
+        for (int i = 1; i <= last; i++) {
+            p = shift(_backward[i], p, _positions[i], k);
+        }
+        p.intoArray(_index, 0);
+        IntVector.fromArray(SPECIES, _plugboard, 0, _index, 0)
+            .intoArray(text, base + k);
+    }
+
+    /** Return the conversion of contacts P by rotors whose doubled wiring
+     *  table is TABLE, at the settings in POSNS of the vector of lanes
+     *  starting at lane K. */
+    private IntVector shift(int[] table, IntVector p, int[] posns, int k) {
+        IntVector posn = IntVector.fromArray(SPECIES, posns, k);
+        p.add(posn).intoArray(_index, 0);
+        IntVector result =
+            IntVector.fromArray(SPECIES, table, 0, _index, 0).sub(posn);
+        return result.add(_size, result.compare(LT, 0));
+    }
+
+    /** Vector shape used for the lanes. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Scratch array holding the gather indices of one vector. */
+    private final int[] _index;
+
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Machines, configurations and messages shared by the benchmarks.
+ *  @author Nhu Vu
+ */
+final class BenchmarkData {
+
+    /** Not instantiable. */
+    private BenchmarkData() {
+    }
+
+    /** The naval rotors as name, type (as in a configuration file) and
+     *  cycles triples. */
+    static final String[] NAVAL = {
+        "I", "MQ", "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "II", "ME", "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "III", "MV", "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "IV", "MJ", "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "V", "MZ", "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)",
+        "VI", "MZM", "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)",
+        "VII", "MZM", "(ANOUPFRIMBZTLWKSVEGCJYDHXQ)",
+        "VIII", "MZM", "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)",
+        "Beta", "N", "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)",
+        "Gamma", "N", "(AFNIRLBSQWVXGUZDKMTPCOYJHE)",
+        "B", "R", "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)",
+        "C", "R", "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW) "
+            + "(QZ) (SX) (UY)",
+    };
+
+    /** Letters of the naval alphabet. */
+    static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Settings line used for every benchmark message. */
+    static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the text of a configuration file for the naval rotors. */
+    static String config() {
+        StringBuilder result = new StringBuilder();
+        result.append(LETTERS).append("\n5 3\n");
+        for (int i = 0; i < NAVAL.length; i += 3) {
+            result.append(NAVAL[i]).append(' ').append(NAVAL[i + 1])
+                .append(' ').append(NAVAL[i + 2]).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return a naval machine set up as described by SETTINGS. */
+    static Machine machine() {
+        Alphabet alphabet = new Alphabet(LETTERS);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (int i = 0; i < NAVAL.length; i += 3) {
+            Permutation perm = new Permutation(NAVAL[i + 2], alphabet);
+            switch (NAVAL[i + 1].charAt(0)) {
+            case 'M':
+                rotors.add(new MovingRotor(NAVAL[i], perm,
+                                           NAVAL[i + 1].substring(1)));
+                break;
+            case 'N':
+                rotors.add(new FixedRotor(NAVAL[i], perm));
+                break;
+            default:
+                rotors.add(new Reflector(NAVAL[i], perm));
+                break;
+            }
+        }
+        Machine machine = new Machine(alphabet, 5, 3, rotors);
+        machine.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             alphabet));
+        return machine;
+    }
+
+    /** Return a pseudo-random message of LEN letters. */
+    static String message(int len) {
+        Random random = new Random(len);
+        char[] result = new char[len];
+        for (int i = 0; i < len; i++) {
+            result[i] = LETTERS.charAt(random.nextInt(LETTERS.length()));
+        }
+        return new String(result);
+    }
+
+    /** Return the text of an input file with MESSAGES messages of LEN
+     *  letters each, written as lines of LINE letters. */
+    static String input(int messages, int len, int line) {
+        StringBuilder result = new StringBuilder();
+        String msg = message(len);
+        for (int m = 0; m < messages; m++) {
+            result.append(SETTINGS).append('\n');
+            for (int k = 0; k < len; k += line) {
+                result.append(msg, k, Math.min(len, k + line)).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,29 @@
+package enigma;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the enigma benchmarks with the GC profiler always enabled, so
+ *  every result reports its allocation rate.  Accepts the usual JMH
+ *  command-line options.
+ *  @author Nhu Vu
+ */
+public final class BenchmarkMain {
+
+    /** Not instantiable. */
+    private BenchmarkMain() {
+    }
+
+    /** Run the benchmarks selected by the JMH options in ARGS. */
+    public static void main(String... args)
+        throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(options)
+                   .addProfiler(GCProfiler.class).build()).run();
+    }
+
+}
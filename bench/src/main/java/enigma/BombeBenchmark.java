@@ -0,0 +1,56 @@
+package enigma;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the Bombe crib attack on the naval machine.  Each
+ *  invocation tests one work unit, every setting of slots 2 to 4 for
+ *  one rotor order and slot-1 setting, so the score is rotor positions
+ *  tested per second.
+ *  @author Nhu Vu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BombeBenchmark {
+
+    /** Positions tested per work unit of a 5-slot machine. */
+    private static final int POSITIONS = 26 * 26 * 26;
+
+    /** Length of the crib. */
+    private static final int CRIB_LENGTH = 25;
+
+    /** Encrypt a message and build a Bombe for a crib of it. */
+    @Setup
+    public void setUp() {
+        String plain = BenchmarkData.message(4 * CRIB_LENGTH);
+        String cipher = BenchmarkData.machine().convert(plain);
+        String crib = plain.substring(CRIB_LENGTH, 2 * CRIB_LENGTH);
+        _bombe = new Bombe(BenchmarkData.machine(), crib, cipher,
+                           CRIB_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public List<Bombe.Stop> unit() {
+        return _bombe.runUnit(0);
+    }
+
+    /** Bombe under test. */
+    private Bombe _bombe;
+}
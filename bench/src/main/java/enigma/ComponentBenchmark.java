@@ -0,0 +1,81 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the per-character operations of Alphabet, Permutation
+ *  and Rotor.  Each invocation performs one operation, cycling through
+ *  the alphabet.
+ *  @author Nhu Vu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentBenchmark {
+
+    /** Build the objects under test. */
+    @Setup
+    public void setUp() {
+        _alphabet = new Alphabet(BenchmarkData.LETTERS);
+        _perm = new Permutation(BenchmarkData.NAVAL[2], _alphabet);
+        _rotor = new MovingRotor("I", _perm, "Q");
+        _rotor.set(7);
+    }
+
+    /** Return the next index to feed to an operation. */
+    private int next() {
+        _next = _next + 1 == _alphabet.size() ? 0 : _next + 1;
+        return _next;
+    }
+
+    @Benchmark
+    public int permute() {
+        return _perm.permute(next());
+    }
+
+    @Benchmark
+    public int invert() {
+        return _perm.invert(next());
+    }
+
+    @Benchmark
+    public int alphabetToInt() {
+        return _alphabet.toInt(BenchmarkData.LETTERS.charAt(next()));
+    }
+
+    @Benchmark
+    public int rotorConvertForward() {
+        return _rotor.convertForward(next());
+    }
+
+    @Benchmark
+    public int rotorConvertBackward() {
+        return _rotor.convertBackward(next());
+    }
+
+    /** Alphabet under test. */
+    private Alphabet _alphabet;
+
+    /** Permutation under test (naval rotor I). */
+    private Permutation _perm;
+
+    /** Rotor under test. */
+    private Rotor _rotor;
+
+    /** Last index used. */
+    private int _next;
+
+}
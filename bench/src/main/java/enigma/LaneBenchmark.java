@@ -0,0 +1,93 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of converting many independent messages side by side:
+ *  one MachineSpec state at a time, the scalar lane engine, and the
+ *  Vector API lane engine.  Each invocation converts LENGTH characters
+ *  in each of LANES lanes, and scores are per character.
+ *  @author Nhu Vu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LaneBenchmark {
+
+    /** Number of messages converted side by side. */
+    private static final int LANES = 64;
+
+    /** Characters per message. */
+    private static final int LENGTH = 1024;
+
+    /** Build the engines and the messages, interleaved by lane. */
+    @Setup
+    public void setUp() {
+        _spec = new MachineSpec(BenchmarkData.machine());
+        _scalar = new ScalarLanes(_spec, LANES);
+        _vector = new VectorLanes(_spec, LANES);
+        _states = new MachineState[LANES];
+        for (int k = 0; k < LANES; k++) {
+            _states[k] = _spec.newState();
+            _states[k].set(1, k % _spec.alphabet().size());
+            _scalar.setState(k, _states[k]);
+            _vector.setState(k, _states[k]);
+        }
+        String msg = BenchmarkData.message(LANES * LENGTH);
+        _text = new int[msg.length()];
+        for (int i = 0; i < _text.length; i++) {
+            _text[i] = _spec.alphabet().toInt(msg.charAt(i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * LENGTH)
+    public int[] single() {
+        for (int k = 0; k < LANES; k++) {
+            MachineState state = _states[k];
+            for (int i = k; i < _text.length; i += LANES) {
+                _text[i] = _spec.convert(state, _text[i]);
+            }
+        }
+        return _text;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * LENGTH)
+    public int[] scalarLanes() {
+        _scalar.convert(_text, LENGTH);
+        return _text;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * LENGTH)
+    public int[] vectorLanes() {
+        _vector.convert(_text, LENGTH);
+        return _text;
+    }
+
+    /** Spec shared by every lane. */
+    private MachineSpec _spec;
+    /** Per-lane states for the single-state benchmark. */
+    private MachineState[] _states;
+    /** Scalar lane engine. */
+    private LaneEngine _scalar;
+    /** Vector lane engine. */
+    private LaneEngine _vector;
+    /** Messages, interleaved by lane. */
+    private int[] _text;
+}
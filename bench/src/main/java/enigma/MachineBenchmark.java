@@ -0,0 +1,94 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine conversion, one character at a time and for
+ *  whole messages of several sizes.
+ *  @author Nhu Vu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** Number of letters in each message. */
+    @Param({ "100", "10000", "1000000" })
+    public int size;
+
+    /** Build the machine and message. */
+    @Setup
+    public void setUp() {
+        _machine = BenchmarkData.machine();
+        _message = BenchmarkData.message(size);
+        _chars = _message.toCharArray();
+        _result = new char[size];
+        _encoded = EncodedText.encode(_machine.alphabet(), _message);
+        _keystream = new KeystreamCache().get(_machine);
+    }
+
+    @Benchmark
+    public int convertInt() {
+        _next = _next + 1 == BenchmarkData.LETTERS.length() ? 0 : _next + 1;
+        return _machine.convert(_next);
+    }
+
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    @Benchmark
+    public char[] convertCharArray() {
+        _machine.convert(_chars, 0, _result, 0, size);
+        return _result;
+    }
+
+    @Benchmark
+    public EncodedText convertEncoded() {
+        _machine.convert(_encoded);
+        return _encoded;
+    }
+
+    @Benchmark
+    public EncodedText convertKeystream() {
+        _keystream.cursor().convert(_encoded, 0, size);
+        return _encoded;
+    }
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Message converted by convertString. */
+    private String _message;
+
+    /** Message converted by convertCharArray. */
+    private char[] _chars;
+
+    /** Destination for convertCharArray. */
+    private char[] _result;
+
+    /** Message converted in place by convertEncoded. */
+    private EncodedText _encoded;
+
+    /** Cached keystream of _machine, used by convertKeystream. */
+    private KeystreamCache.Keystream _keystream;
+
+    /** Last index converted by convertInt. */
+    private int _next;
+
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmarks of Main over generated configuration and
+ *  input files, in each of its processing modes.
+ *  @author Nhu Vu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MainBenchmark {
+
+    /** Number of messages in the input file. */
+    @Param({ "1", "1000" })
+    public int messages;
+
+    /** Number of letters in each message. */
+    @Param({ "1000", "100000" })
+    public int length;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        _config = _dir.resolve("naval.conf");
+        _input = _dir.resolve("input.txt");
+        _output = _dir.resolve("output.txt");
+        Files.writeString(_config, BenchmarkData.config());
+        Files.writeString(_input,
+                          BenchmarkData.input(messages, length, LINE));
+    }
+
+    /** Remove the generated files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(_config);
+        Files.deleteIfExists(_input);
+        Files.deleteIfExists(_output);
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark
+    public void streaming() {
+        Main.main(_config.toString(), _input.toString(), _output.toString());
+    }
+
+    @Benchmark
+    public void mapped() {
+        Main.main(Main.MAPPED_FLAG, _config.toString(), _input.toString(),
+                  _output.toString());
+    }
+
+    @Benchmark
+    public void batch() {
+        Main.main(Main.BATCH_FLAG, _config.toString(), _input.toString(),
+                  _output.toString());
+    }
+
+    /** Letters per input line. */
+    private static final int LINE = 60;
+
+    /** Directory holding the generated files. */
+    private Path _dir;
+
+    /** Configuration file. */
+    private Path _config;
+
+    /** Input file. */
+    private Path _input;
+
+    /** Output file. */
+    private Path _output;
+
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the plugboard hill climber on the naval machine: one
+ *  trial decryption and scoring, and a complete single-restart climb.
+ *  @author Nhu Vu
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlugboardBenchmark {
+
+    /** Length of the message. */
+    @Param({ "250", "1000" })
+    public int length;
+
+    /** Encrypt a message and build a solver for it. */
+    @Setup
+    public void setUp() {
+        String plain = BenchmarkData.message(length);
+        String cipher = BenchmarkData.machine().convert(plain);
+        Machine machine = BenchmarkData.machine();
+        NGramModel model = new NGramModel(machine.alphabet(), 3, plain);
+        _solver = new PlugboardSolver(machine, cipher, model);
+        _plugboard = new int[machine.alphabet().size()];
+        for (int a = 0; a < _plugboard.length; a++) {
+            _plugboard[a] = a;
+        }
+        _plain = new int[length];
+    }
+
+    @Benchmark
+    public double trial() {
+        return _solver.score(_plugboard, _plain);
+    }
+
+    @Benchmark
+    public double climb() {
+        _seed += 1;
+        return _solver.solve(1, 10, _seed, _pool).score();
+    }
+
+    /** Solver under test. */
+    private PlugboardSolver _solver;
+    /** Identity plugboard for trials. */
+    private int[] _plugboard;
+    /** Buffer for trial decryptions. */
+    private int[] _plain;
+    /** Seed of the next climb. */
+    private long _seed;
+    /** Single-thread pool for climbs. */
+    private final ForkJoinPool _pool = new ForkJoinPool(1);
+}